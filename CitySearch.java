@@ -1,5 +1,4 @@
-import autocomplete.Autocomplete;
-import autocomplete.TreeSetAutocomplete;
+import autocomplete.WeightedTernarySearchTreeAutocomplete;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -29,8 +28,11 @@ public class CitySearch {
             Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
             cities.put(line.next(), line.nextInt());
         }
-        Autocomplete autocomplete = new TreeSetAutocomplete();
-        autocomplete.addAll(cities.keySet());
+        // Weigh each city by its negated population so that the most populous cities rank first.
+        WeightedTernarySearchTreeAutocomplete autocomplete = new WeightedTernarySearchTreeAutocomplete();
+        for (Map.Entry<String, Integer> city : cities.entrySet()) {
+            autocomplete.add(city.getKey(), -city.getValue());
+        }
 
         Scanner stdin = new Scanner(System.in);
         System.out.print("Query: ");
@@ -39,11 +41,9 @@ public class CitySearch {
             if (prefix.isEmpty()) {
                 System.exit(0);
             }
-            List<CharSequence> matches = autocomplete.allMatches(prefix);
-            System.out.println(matches.size() + " matches");
-            matches.sort(Comparator.comparingInt(cities::get).reversed());
-            for (int i = 0; i < Math.min(matches.size(), MAX_MATCHES); i += 1) {
-                System.out.println(matches.get(i));
+            System.out.println(autocomplete.countMatches(prefix) + " matches");
+            for (CharSequence match : autocomplete.topMatches(prefix, MAX_MATCHES)) {
+                System.out.println(match);
             }
             System.out.println();
             System.out.print("Query: ");
@@ -0,0 +1,201 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit on the number of concurrent requests to one endpoint. Requests over the limit wait in a bounded queue
+ * for a short time and are rejected once the queue is full or the wait expires, so excess load is shed quickly
+ * instead of piling up behind slow requests.
+ *
+ * <p>The limit adapts with additive-increase/multiplicative-decrease (AIMD): each request that completes within the
+ * target latency while the limit is saturated raises the limit by about one per limit's worth of requests, and a
+ * request that fails or exceeds the target latency cuts the limit by a constant factor. Like a congestion window, the
+ * limit is cut at most once per window: the requests still in flight when the limit is cut were admitted under the old
+ * limit, so their outcomes are ignored for cutting the limit again, as otherwise a burst of slow requests would
+ * collapse the limit in a single round trip.
+ *
+ * @see MapServer
+ */
+public class ConcurrencyLimiter {
+    /**
+     * Factor applied to the limit after a slow or failed request.
+     */
+    private static final double BACKOFF = 0.9;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final long targetLatencyNanos;
+    private final ReentrantLock lock;
+    private final Condition available;
+    private final LongAdder accepted;
+    private final LongAdder queued;
+    private final LongAdder rejected;
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    /**
+     * The number of requests released so far.
+     */
+    private long completions;
+    /**
+     * The number of completions at which the limit may be cut again, once every request in flight at the last cut
+     * has completed.
+     */
+    private long nextBackoff;
+
+    /**
+     * Constructs a limiter.
+     *
+     * @param initialLimit  the starting concurrency limit.
+     * @param minLimit      the smallest concurrency limit.
+     * @param maxLimit      the largest concurrency limit.
+     * @param maxQueue      the maximum number of requests waiting for a permit.
+     * @param maxWaitMillis the maximum time a request waits for a permit.
+     * @param targetMillis  the latency above which a request counts as slow.
+     * @throws IllegalArgumentException if the limits are not ordered {@code 1 <= min <= initial <= max}.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMillis,
+                              long targetMillis) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        lock = new ReentrantLock();
+        available = lock.newCondition();
+        accepted = new LongAdder();
+        queued = new LongAdder();
+        rejected = new LongAdder();
+        limit = initialLimit;
+    }
+
+    /**
+     * Acquires a permit, waiting in the queue if the limit is reached and the queue has room. Every successful call
+     * must be followed by exactly one call to {@link #release(long, boolean)}.
+     *
+     * @return true if a permit was acquired, or false if the request should be shed.
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight += 1;
+                accepted.increment();
+                return true;
+            }
+            if (waiting >= maxQueue) {
+                rejected.increment();
+                return false;
+            }
+            waiting += 1;
+            queued.increment();
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        return false;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.increment();
+                return false;
+            } finally {
+                waiting -= 1;
+            }
+            inFlight += 1;
+            accepted.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit and adapts the limit to the outcome of the request.
+     *
+     * @param latencyNanos the time the request held its permit.
+     * @param success      true if the request succeeded.
+     */
+    public void release(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight -= 1;
+            completions += 1;
+            if (!success || latencyNanos > targetLatencyNanos) {
+                if (completions >= nextBackoff) {
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                    nextBackoff = completions + inFlight + 1;
+                }
+            } else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return the current concurrency limit.
+     */
+    public long limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently holding a permit.
+     *
+     * @return the number of requests currently holding a permit.
+     */
+    public long inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests that acquired a permit.
+     *
+     * @return the number of requests that acquired a permit.
+     */
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of requests that waited in the queue, whether or not they later acquired a permit.
+     *
+     * @return the number of requests that waited in the queue.
+     */
+    public long queued() {
+        return queued.sum();
+    }
+
+    /**
+     * Returns the number of requests that were shed.
+     *
+     * @return the number of requests that were shed.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+}
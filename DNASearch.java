@@ -1,5 +1,5 @@
 import autocomplete.Autocomplete;
-import autocomplete.TreeSetAutocomplete;
+import autocomplete.BinarySearchAutocomplete;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -23,7 +23,9 @@ public class DNASearch {
 
     public static void main(String[] args) throws IOException {
         String dna = new Scanner(new FileInputStream(PATH)).next();
-        Autocomplete autocomplete = new TreeSetAutocomplete();
+        // Binary search finds the range of matching suffixes, so counting the matches takes two binary searches even
+        // when a short prefix matches millions of suffixes.
+        Autocomplete autocomplete = new BinarySearchAutocomplete();
         autocomplete.addAll(new SuffixCollection(dna));
 
         Scanner stdin = new Scanner(System.in);
@@ -33,9 +35,10 @@ public class DNASearch {
             if (prefix.isEmpty()) {
                 System.exit(0);
             }
-            List<CharSequence> matches = autocomplete.allMatches(prefix);
-            System.out.println(matches.size() + " matches");
-            for (int i = 0; i < Math.min(matches.size(), MAX_MATCHES); i += 1) {
+            int count = autocomplete.allMatches(prefix).size();
+            List<CharSequence> matches = autocomplete.matches(prefix, MAX_MATCHES);
+            System.out.println(count + " matches");
+            for (int i = 0; i < matches.size(); i += 1) {
                 CharSequence match = matches.get(i);
                 if (match.length() >= 97) {
                     match = match.subSequence(0, 97) + "...";
@@ -0,0 +1,89 @@
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+
+import java.util.Random;
+
+/**
+ * Compare the cost of the exact haversine distance against the precomputed {@link MapGraph#estimatedDistance}
+ * kernel on pairs of graph vertices, and check that the kernel never overestimates.
+ */
+public class HeuristicBenchmark {
+    /**
+     * The OpenStreetMap XML file path.
+     */
+    private static final String OSM_DB_PATH = "seattle.osm.gz";
+    /**
+     * The place-importance TSV data file path from OpenStreetMap.
+     */
+    private static final String PLACES_PATH = "places.tsv";
+    /**
+     * Number of distinct vertices sampled from the graph.
+     */
+    private static final int NUM_VERTICES = 1024;
+    /**
+     * Number of distance evaluations per trial.
+     */
+    private static final int NUM_CALLS = 10_000_000;
+    /**
+     * Number of trials per kernel. The first trial only warms up the JIT.
+     */
+    private static final int NUM_TRIALS = 6;
+    /**
+     * Largest estimate/exact ratio above 1 attributed to rounding rather than overestimation. The two distances are
+     * computed by different formulas, which can disagree in the last few bits for very close vertices.
+     */
+    private static final double RATIO_TOLERANCE = 1e-12;
+
+    public static void main(String[] args) throws Exception {
+        SpatialContext context = SpatialContext.GEO;
+        ShapeFactory factory = context.getShapeFactory();
+        MapGraph map = new MapGraph(OSM_DB_PATH, PLACES_PATH, context);
+
+        Random random = new Random(373);
+        Point[] vertices = new Point[NUM_VERTICES];
+        for (int i = 0; i < vertices.length; i += 1) {
+            Point p = factory.pointLatLon(47.50 + 0.25 * random.nextDouble(), -122.45 + 0.20 * random.nextDouble());
+            vertices[i] = map.closest(p);
+        }
+
+        double maxRatio = 0.0;
+        for (Point start : vertices) {
+            for (Point end : vertices) {
+                double exact = context.calcDistance(start, end);
+                if (exact > 0) {
+                    maxRatio = Math.max(maxRatio, map.estimatedDistance(start, end) / exact);
+                }
+            }
+        }
+        System.out.println("max estimate/exact ratio: " + maxRatio);
+        if (maxRatio > 1.0 + RATIO_TOLERANCE) {
+            throw new AssertionError("Heuristic overestimates the exact distance");
+        }
+
+        System.out.println("trial,haversineNanosPerCall,kernelNanosPerCall");
+        for (int trial = 0; trial < NUM_TRIALS; trial += 1) {
+            double sink = 0.0;
+            long haversineStart = System.nanoTime();
+            for (int i = 0; i < NUM_CALLS; i += 1) {
+                sink += context.calcDistance(vertices[i & (NUM_VERTICES - 1)], vertices[(i * 7) & (NUM_VERTICES - 1)]);
+            }
+            long haversineTime = System.nanoTime() - haversineStart;
+
+            long kernelStart = System.nanoTime();
+            for (int i = 0; i < NUM_CALLS; i += 1) {
+                sink += map.estimatedDistance(vertices[i & (NUM_VERTICES - 1)], vertices[(i * 7) & (NUM_VERTICES - 1)]);
+            }
+            long kernelTime = System.nanoTime() - kernelStart;
+
+            if (trial > 0) {
+                System.out.printf("%d,%.2f,%.2f%n", trial, haversineTime / (double) NUM_CALLS,
+                        kernelTime / (double) NUM_CALLS);
+            }
+            // Print nothing from the sink but keep it live so neither loop is eliminated.
+            if (sink == Double.NEGATIVE_INFINITY) {
+                System.out.println(sink);
+            }
+        }
+    }
+}
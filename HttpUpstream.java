@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link MapImageCache.Upstream} that fetches static map images through one shared {@link HttpClient}. The client
+ * keeps HTTP/2 connections open between requests, and every request is bounded by a connect timeout, a response
+ * timeout, and a limit on the number of requests in flight. Requests beyond the limit are rejected immediately rather
+ * than queued, so a slow upstream cannot accumulate unbounded work.
+ *
+ * @see MapImageCache
+ */
+public class HttpUpstream implements MapImageCache.Upstream {
+    private final HttpClient client;
+    private final String base;
+    private final String token;
+    private final Duration responseTimeout;
+    private final Semaphore inFlight;
+
+    /**
+     * Constructs an upstream for the given base URL.
+     *
+     * @param base            the base URL including the trailing slash.
+     * @param token           the access token appended to every request, or null for none.
+     * @param connectTimeout  the maximum time to establish a connection.
+     * @param responseTimeout the maximum time from sending a request to receiving the complete response.
+     * @param maxInFlight     the maximum number of concurrent upstream requests.
+     */
+    public HttpUpstream(String base, String token, Duration connectTimeout, Duration responseTimeout,
+                        int maxInFlight) {
+        this.base = base;
+        this.token = token;
+        this.responseTimeout = responseTimeout;
+        inFlight = new Semaphore(maxInFlight);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Returns a future for the image at the given path.
+     *
+     * @param path the request path, excluding the host and any credentials.
+     * @return a future for the image bytes that completes exceptionally with a {@link RejectedExecutionException} if
+     * too many requests are in flight, an {@link java.net.http.HttpTimeoutException} if the upstream is too slow, or
+     * an {@link IOException} if the upstream fails.
+     */
+    @Override
+    public CompletableFuture<byte[]> fetch(String path) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many upstream requests"));
+        }
+        HttpRequest request;
+        try {
+            String query = token != null ? "&access_token=" + token : "";
+            request = HttpRequest.newBuilder(URI.create(base + path + query))
+                    .timeout(responseTimeout)
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> inFlight.release())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new UpstreamException(response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
+
+    /**
+     * Thrown when the upstream responds with an unsuccessful status code.
+     */
+    public static class UpstreamException extends RuntimeException {
+        /**
+         * Constructs an exception for the given upstream status code.
+         *
+         * @param status the upstream status code.
+         */
+        public UpstreamException(int status) {
+            super("Upstream responded with status " + status);
+        }
+    }
+}
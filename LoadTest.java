@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reproducible load test comparing {@link MapServer} execution modes. For each mode, starts a fresh server process
+ * pointed at a local {@link StubUpstream}, drives a mix of {@code /search} and {@code /map} requests from a fixed
+ * number of concurrent clients, and reports throughput and latency percentiles per endpoint.
+ *
+ * <p>Usage: {@code LoadTest [clients] [seconds] [upstreamDelayMs]}
+ */
+public class LoadTest {
+    /**
+     * Execution modes to compare, in the order they are run.
+     */
+    private static final String[] MODES = {"platform", "virtual"};
+    /**
+     * Port for the server under test.
+     */
+    private static final int PORT = 8090;
+    /**
+     * Maximum time to wait for the server under test to start answering requests.
+     */
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(5);
+    /**
+     * Search prefixes sent to {@code /search}.
+     */
+    private static final String[] PREFIXES = {"S", "Sta", "Univ", "Gas", "Cafe", "Pike", "Uni", "Se", "B", "Wa"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long upstreamDelayMs = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+        StubUpstream upstream = new StubUpstream(0, upstreamDelayMs);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        System.out.println("mode,endpoint,requests,errors,throughputPerSecond,p50Millis,p99Millis");
+        try {
+            for (String mode : MODES) {
+                Process server = startServer(mode, upstream.url());
+                try {
+                    awaitStartup(client, server);
+                    run(client, mode, clients, seconds);
+                } finally {
+                    server.destroy();
+                    server.waitFor();
+                }
+            }
+        } finally {
+            upstream.stop();
+        }
+    }
+
+    /**
+     * Starts a server process in the given execution mode with an empty image cache.
+     *
+     * @param mode        the execution mode.
+     * @param upstreamUrl the base URL of the stub upstream.
+     * @return the server process.
+     * @throws IOException if the process cannot be started.
+     */
+    private static Process startServer(String mode, String upstreamUrl) throws IOException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        ProcessBuilder builder = new ProcessBuilder(java.toString(),
+                "-cp", System.getProperty("java.class.path"), "MapServer");
+        Map<String, String> env = builder.environment();
+        env.put("PORT", String.valueOf(PORT));
+        env.put("EXECUTION_MODE", mode);
+        env.put("UPSTREAM_URL", upstreamUrl);
+        env.put("CACHE_DIR", Files.createTempDirectory("huskymaps-load").toString());
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        return builder.start();
+    }
+
+    /**
+     * Waits until the server reports that it has finished loading the map data.
+     *
+     * @param client the HTTP client.
+     * @param server the server process.
+     * @throws Exception if the server exits or does not start in time.
+     */
+    private static void awaitStartup(HttpClient client, Process server) throws Exception {
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri("/ready")).build();
+        while (System.nanoTime() < deadline) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with status " + server.exitValue());
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(500);
+        }
+        throw new TimeoutException("Server did not start within " + STARTUP_TIMEOUT);
+    }
+
+    /**
+     * Drives the server from the given number of clients for the given duration and prints the results.
+     *
+     * @param client  the HTTP client.
+     * @param mode    the execution mode being measured.
+     * @param clients the number of concurrent clients.
+     * @param seconds the measurement duration in seconds.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    private static void run(HttpClient client, String mode, int clients, int seconds) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Result>> futures = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i += 1) {
+            Random random = new Random(373 + i);
+            futures.add(pool.submit(() -> {
+                Result result = new Result();
+                while (System.nanoTime() < end) {
+                    boolean search = random.nextBoolean();
+                    String path = search ? searchPath(random) : mapPath(random);
+                    HttpRequest request = HttpRequest.newBuilder(uri(path)).build();
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        status = -1;
+                    }
+                    long latency = System.nanoTime() - start;
+                    result.record(search, status == 200, latency);
+                }
+                return result;
+            }));
+        }
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            try {
+                total.merge(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        pool.shutdown();
+        total.print(mode, "/search", total.searchLatencies, total.searchErrors, seconds);
+        total.print(mode, "/map", total.mapLatencies, total.mapErrors, seconds);
+    }
+
+    /**
+     * Returns a random search request path.
+     *
+     * @param random the source of randomness.
+     * @return a random search request path.
+     */
+    private static String searchPath(Random random) {
+        return "/search?term=" + PREFIXES[random.nextInt(PREFIXES.length)];
+    }
+
+    /**
+     * Returns a map request path for a random view around Seattle, routing between two random points half the time.
+     * Views are random so that most requests miss the image cache and reach the upstream.
+     *
+     * @param random the source of randomness.
+     * @return a map request path for a random view around Seattle.
+     */
+    private static String mapPath(Random random) {
+        double lon = -122.40 + 0.15 * random.nextDouble();
+        double lat = 47.55 + 0.15 * random.nextDouble();
+        String path = String.format("/map/%f,%f,%d/%dx%d", lon, lat, 13, 1280, 720);
+        if (random.nextBoolean()) {
+            path += String.format("?startLon=%f&startLat=%f&goalLon=%f&goalLat=%f",
+                    lon - 0.01, lat - 0.01, lon + 0.01, lat + 0.01);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the URI for the given path on the server under test.
+     *
+     * @param path the request path.
+     * @return the URI for the given path on the server under test.
+     */
+    private static URI uri(String path) {
+        return URI.create("http://localhost:" + PORT + path);
+    }
+
+    /**
+     * Latencies and error counts recorded by one or more clients.
+     */
+    private static class Result {
+        private final List<Long> searchLatencies = new ArrayList<>();
+        private final List<Long> mapLatencies = new ArrayList<>();
+        private int searchErrors;
+        private int mapErrors;
+
+        void record(boolean search, boolean ok, long latency) {
+            if (search) {
+                searchLatencies.add(latency);
+                searchErrors += ok ? 0 : 1;
+            } else {
+                mapLatencies.add(latency);
+                mapErrors += ok ? 0 : 1;
+            }
+        }
+
+        void merge(Result other) {
+            searchLatencies.addAll(other.searchLatencies);
+            mapLatencies.addAll(other.mapLatencies);
+            searchErrors += other.searchErrors;
+            mapErrors += other.mapErrors;
+        }
+
+        void print(String mode, String endpoint, List<Long> latencies, int errors, int seconds) {
+            Collections.sort(latencies);
+            System.out.printf("%s,%s,%d,%d,%.1f,%.1f,%.1f%n", mode, endpoint, latencies.size(), errors,
+                    latencies.size() / (double) seconds, percentile(latencies, 0.50), percentile(latencies, 0.99));
+        }
+
+        /**
+         * Returns the given percentile of the sorted latencies in milliseconds.
+         *
+         * @param sorted   the latencies in nanoseconds, sorted in ascending order.
+         * @param fraction the percentile as a fraction between 0 and 1.
+         * @return the given percentile of the sorted latencies in milliseconds.
+         */
+        private static double percentile(List<Long> sorted, double fraction) {
+            if (sorted.isEmpty()) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+            return sorted.get(Math.max(index, 0)) / 1e6;
+        }
+    }
+}
@@ -1,11 +1,11 @@
-import autocomplete.Autocomplete;
-import autocomplete.TreeSetAutocomplete;
 import graphs.AStarGraph;
 import graphs.Edge;
 import graphs.shortestpaths.AStarSolver;
-import minpq.DoubleMapMinPQ;
 import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
 import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.impl.PointImpl;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -16,6 +16,9 @@ import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -25,13 +28,34 @@ import java.util.zip.GZIPInputStream;
  * @see MapServer
  */
 public class MapGraph implements AStarGraph<Point> {
+    /**
+     * Side length in degrees of the square cells in the edge grid.
+     */
+    private static final double CELL_DEGREES = 0.01;
     private final String osmPath;
     private final String placesPath;
     private final SpatialContext context;
     private final Map<Point, List<Edge<Point>>> neighbors;
+    /**
+     * Locations by name, each list sorted by longitude.
+     */
     private final Map<String, List<Point>> locations;
-    private final Autocomplete autocomplete;
-    private final Map<CharSequence, Integer> importance;
+    private final PlaceIndex places;
+    private final NearbyIndex nearby;
+    /**
+     * Each edge stored once in the grid cell containing its originating point.
+     */
+    private final Map<Long, List<Edge<Point>>> edgeGrid;
+    private final Rectangle bounds;
+    private final double maxEdgeSpan;
+    /**
+     * The region this graph is an extract of, or null for the whole map.
+     */
+    private final Rectangle region;
+    /**
+     * Endpoints of the streets that cross the edge of the region, in longitude and then latitude order.
+     */
+    private final List<Point> boundary;
 
     /**
      * Constructs a new map graph from the path to an OSM GZ file and a places TSV.
@@ -44,13 +68,34 @@ public class MapGraph implements AStarGraph<Point> {
      */
     public MapGraph(String osmPath, String placesPath, SpatialContext context)
             throws ParserConfigurationException, SAXException, IOException {
+        this(osmPath, placesPath, context, null);
+    }
+
+    /**
+     * Constructs a new map graph of one region from the path to an OSM GZ file and a places TSV. The graph keeps every
+     * street with at least one endpoint in the region (see {@link #inRegion(Point)}) and every named location in the
+     * region. Streets crossing the edge of the region are kept by the graphs of the regions on both sides, so their
+     * endpoints (see {@link #boundary()}) join the graphs of adjacent regions. The OSM data is parsed twice for a
+     * region: first to find the nodes of the streets that the region keeps, and then to build the graph from only
+     * those nodes, so that memory while parsing grows with the size of the region rather than the whole map.
+     *
+     * @param osmPath    The path to a gzipped OSM (XML) file.
+     * @param placesPath The path to a TSV file representing places and importance.
+     * @param region     The region to extract, or null for the whole map.
+     * @throws ParserConfigurationException if a parser cannot be created.
+     * @throws SAXException                 for SAX errors.
+     * @throws IOException                  if a file is not found or if the file is not gzipped.
+     */
+    public MapGraph(String osmPath, String placesPath, SpatialContext context, Rectangle region)
+            throws ParserConfigurationException, SAXException, IOException {
         this.osmPath = osmPath;
         this.placesPath = placesPath;
         this.context = context;
+        this.region = region;
 
         // Parse the OpenStreetMap (OSM) data using the SAXParser XML tree walker.
         neighbors = new HashMap<>();
-        Handler handler = new Handler(Set.of(
+        Set<String> allowedHighwayTypes = Set.of(
                 "motorway",
                 "trunk",
                 "primary",
@@ -64,23 +109,60 @@ public class MapGraph implements AStarGraph<Point> {
                 "primary_link",
                 "secondary_link",
                 "tertiary_link"
-        ));
+        );
         SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        LongPredicate keep = id -> true;
+        if (region != null) {
+            StreetNodes streetNodes = new StreetNodes(allowedHighwayTypes);
+            saxParser.parse(new GZIPInputStream(fileStream(osmPath)), streetNodes);
+            keep = streetNodes.ids();
+        }
+        Handler handler = new Handler(allowedHighwayTypes, keep);
         saxParser.parse(new GZIPInputStream(fileStream(osmPath)), handler);
 
-        // Add reachable locations to the Autocomplete engine.
+        // Add reachable locations to the place index ranked by the place-importance data.
         locations = handler.byName;
-        autocomplete = new TreeSetAutocomplete();
-        autocomplete.addAll(locations.keySet());
-
-        // Parse the place-importance data.
-        importance = new HashMap<>();
-        try (Scanner input = new Scanner(fileStream(placesPath))) {
-            while (input.hasNextLine()) {
-                Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
-                importance.put(line.next(), line.nextInt());
+        for (List<Point> points : locations.values()) {
+            points.sort(Comparator.comparingDouble(Point::getLon));
+        }
+        places = new PlaceIndex(locations, PlaceIndex.importance(placesPath), context);
+        nearby = new NearbyIndex(locations);
+
+        // Index each street once (the direction from the smaller to the larger point) by its originating cell.
+        edgeGrid = new HashMap<>();
+        double minLon = Double.POSITIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double span = 0.0;
+        for (Map.Entry<Point, List<Edge<Point>>> entry : neighbors.entrySet()) {
+            Point from = entry.getKey();
+            minLon = Math.min(minLon, from.getLon());
+            minLat = Math.min(minLat, from.getLat());
+            maxLon = Math.max(maxLon, from.getLon());
+            maxLat = Math.max(maxLat, from.getLat());
+            for (Edge<Point> e : entry.getValue()) {
+                if (compare(e.from, e.to) < 0) {
+                    edgeGrid.computeIfAbsent(cell(from.getLon(), from.getLat()), k -> new ArrayList<>()).add(e);
+                    span = Math.max(span, Math.abs(e.to.getLon() - from.getLon()));
+                    span = Math.max(span, Math.abs(e.to.getLat() - from.getLat()));
+                }
             }
         }
+        maxEdgeSpan = span;
+        bounds = neighbors.isEmpty() ? null : context.getShapeFactory().rect(minLon, maxLon, minLat, maxLat);
+
+        Set<Point> crossing = new TreeSet<>(MapGraph::compare);
+        if (region != null) {
+            for (List<Edge<Point>> edges : neighbors.values()) {
+                for (Edge<Point> e : edges) {
+                    if (inRegion(e.from) != inRegion(e.to)) {
+                        crossing.add(e.from);
+                    }
+                }
+            }
+        }
+        boundary = List.copyOf(crossing);
     }
 
     /**
@@ -103,8 +185,96 @@ public class MapGraph implements AStarGraph<Point> {
         if (neighbors.containsKey(target)) {
             return target;
         }
-        return Collections.min(neighbors.keySet(),
-                Comparator.comparingDouble(p -> estimatedDistance(target, p)));
+        // Chord length increases with great-circle distance, so the nearest vertex by chord is also the closest.
+        Vertex t = new Vertex(target.getX(), target.getY(), context);
+        Point result = null;
+        double min = Double.POSITIVE_INFINITY;
+        for (Point p : neighbors.keySet()) {
+            double d = t.squaredChord((Vertex) p);
+            if (d < min) {
+                min = d;
+                result = p;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the point lies in the region of this graph. Regions include their western and southern edges
+     * but not their eastern and northern edges unless those are the antimeridian or the North Pole, so regions that
+     * share an edge never both contain a point.
+     *
+     * @param point the point.
+     * @return true if the point lies in the region of this graph, or true for every point if there is no region.
+     */
+    public boolean inRegion(Point point) {
+        return region == null || point.getLon() >= region.getMinX()
+                && (point.getLon() < region.getMaxX() || region.getMaxX() == 180)
+                && point.getLat() >= region.getMinY()
+                && (point.getLat() < region.getMaxY() || region.getMaxY() == 90);
+    }
+
+    /**
+     * Returns the region this graph is an extract of.
+     *
+     * @return the region this graph is an extract of, or null for the whole map.
+     */
+    public Rectangle region() {
+        return region;
+    }
+
+    /**
+     * Returns the endpoints of the streets that cross the edge of the region. Both endpoints of such a street are
+     * vertices of the graphs of the regions on either side, so every route between regions passes through them.
+     *
+     * @return an unmodifiable list of boundary vertices, empty if there is no region.
+     */
+    public List<Point> boundary() {
+        return boundary;
+    }
+
+    /**
+     * Returns the smallest rectangle containing every vertex of this graph.
+     *
+     * @return the smallest rectangle containing every vertex of this graph, or null if the graph is empty.
+     */
+    public Rectangle bounds() {
+        return bounds;
+    }
+
+    /**
+     * Performs the given action once for each street whose bounding box intersects the given rectangle. Each street
+     * is visited in only one of its two directions.
+     *
+     * @param area   the rectangle of interest.
+     * @param action the action to perform on each street.
+     */
+    public void forEachEdge(Rectangle area, Consumer<Edge<Point>> action) {
+        if (bounds == null) {
+            return;
+        }
+        // Streets are indexed by their originating point, which may lie up to maxEdgeSpan outside the area. Cells
+        // beyond the bounds of the graph are empty, so the scan is also clipped to the bounds.
+        long minX = (long) Math.floor(Math.max(area.getMinX() - maxEdgeSpan, bounds.getMinX()) / CELL_DEGREES);
+        long maxX = (long) Math.floor(Math.min(area.getMaxX() + maxEdgeSpan, bounds.getMaxX()) / CELL_DEGREES);
+        long minY = (long) Math.floor(Math.max(area.getMinY() - maxEdgeSpan, bounds.getMinY()) / CELL_DEGREES);
+        long maxY = (long) Math.floor(Math.min(area.getMaxY() + maxEdgeSpan, bounds.getMaxY()) / CELL_DEGREES);
+        for (long x = minX; x <= maxX; x += 1) {
+            for (long y = minY; y <= maxY; y += 1) {
+                List<Edge<Point>> edges = edgeGrid.get(cellKey(x, y));
+                if (edges == null) {
+                    continue;
+                }
+                for (Edge<Point> e : edges) {
+                    if (Math.max(e.from.getLon(), e.to.getLon()) >= area.getMinX()
+                            && Math.min(e.from.getLon(), e.to.getLon()) <= area.getMaxX()
+                            && Math.max(e.from.getLat(), e.to.getLat()) >= area.getMinY()
+                            && Math.min(e.from.getLat(), e.to.getLat()) <= area.getMaxY()) {
+                        action.accept(e);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -114,12 +284,30 @@ public class MapGraph implements AStarGraph<Point> {
      * @return a list of full names of locations matching the prefix.
      */
     public List<CharSequence> getLocationsByPrefix(String prefix, int maxMatches) {
-        List<CharSequence> matches = autocomplete.allMatches(prefix);
-        Map<CharSequence, Double> elementsAndPriorities = new HashMap<>(matches.size());
-        for (CharSequence match : matches) {
-            elementsAndPriorities.put(match, (double) importance.get(match));
-        }
-        return new DoubleMapMinPQ<>(elementsAndPriorities).removeMin(maxMatches);
+        return getLocationsByPrefix(prefix, maxMatches, count -> {
+        });
+    }
+
+    /**
+     * Return the names of the locations that prefix-match the query string in order of importance, reporting the
+     * total number of matches.
+     *
+     * @param prefix     prefix string that could be any case with or without punctuation.
+     * @param maxMatches the maximum number of names to return.
+     * @param matchCount receives the number of folded keys matching the prefix.
+     * @return a list of full names of locations matching the prefix.
+     */
+    public List<CharSequence> getLocationsByPrefix(String prefix, int maxMatches, LongConsumer matchCount) {
+        return places.getLocationsByPrefix(prefix, maxMatches, matchCount);
+    }
+
+    /**
+     * Returns the index over the names of the locations in this graph.
+     *
+     * @return the index over the names of the locations in this graph.
+     */
+    public PlaceIndex places() {
+        return places;
     }
 
     /**
@@ -132,6 +320,52 @@ public class MapGraph implements AStarGraph<Point> {
         return locations.getOrDefault(locationName, List.of());
     }
 
+    /**
+     * Returns the locations matching a valid location name that lie in the given area, nearest to the center of the
+     * area first. Only the locations within the longitude range of the area are examined.
+     *
+     * @param locationName a full name of a valid location.
+     * @param area         the area, such as the viewport of a map image.
+     * @param limit        the maximum number of locations to return.
+     * @return a list of up to the given number of locations in the area whose name matches the location name.
+     */
+    public List<Point> getLocations(String locationName, Rectangle area, int limit) {
+        List<Point> points = locations.getOrDefault(locationName, List.of());
+        // Find the first location at or east of the western edge of the area.
+        int low = 0;
+        int high = points.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points.get(mid).getLon() < area.getMinX()) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Point> result = new ArrayList<>();
+        for (int i = low; i < points.size() && points.get(i).getLon() <= area.getMaxX(); i += 1) {
+            Point point = points.get(i);
+            if (point.getLat() >= area.getMinY() && point.getLat() <= area.getMaxY()) {
+                result.add(point);
+            }
+        }
+        Point center = area.getCenter();
+        result.sort(Comparator.comparingDouble(point -> context.calcDistance(point, center)));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /**
+     * Returns up to the given number of named locations closest to the target, closest first.
+     *
+     * @param target the target location.
+     * @param k      the maximum number of locations to return.
+     * @return up to the given number of named locations closest to the target, closest first.
+     * @see NearbyIndex#nearest(Point, int)
+     */
+    public List<NearbyIndex.Neighbor> nearby(Point target, int k) {
+        return nearby.nearest(target, k);
+    }
+
     /**
      * Returns a list of points representing the shortest path from the points closest to the start and goal.
      *
@@ -145,11 +379,23 @@ public class MapGraph implements AStarGraph<Point> {
 
     @Override
     public List<Edge<Point>> neighbors(Point point) {
-        return neighbors.computeIfAbsent(point, (p) -> List.of());
+        return neighbors.getOrDefault(point, List.of());
     }
 
+    /**
+     * Returns a lower bound on the great-circle distance in degrees from start to end. Graph vertices carry precomputed
+     * unit vectors, so the estimate between two vertices is the straight-line chord through the sphere, which needs
+     * only a square root and never exceeds the arc it cuts off. Any other points fall back to the exact distance.
+     *
+     * @param start the beginning vertex.
+     * @param end   the destination vertex.
+     * @return a lower bound on the great-circle distance in degrees from start to end.
+     */
     @Override
     public double estimatedDistance(Point start, Point end) {
+        if (start instanceof Vertex && end instanceof Vertex) {
+            return Math.sqrt(((Vertex) start).squaredChord((Vertex) end)) * DistanceUtils.RADIANS_TO_DEGREES;
+        }
         return context.calcDistance(start, end);
     }
 
@@ -162,6 +408,40 @@ public class MapGraph implements AStarGraph<Point> {
                 '}';
     }
 
+    /**
+     * Returns the key of the grid cell containing the given coordinates.
+     *
+     * @param lon the longitude in degrees.
+     * @param lat the latitude in degrees.
+     * @return the key of the grid cell containing the given coordinates.
+     */
+    private static long cell(double lon, double lat) {
+        return cellKey((long) Math.floor(lon / CELL_DEGREES), (long) Math.floor(lat / CELL_DEGREES));
+    }
+
+    /**
+     * Returns the key of the grid cell at the given column and row.
+     *
+     * @param x the column index.
+     * @param y the row index.
+     * @return the key of the grid cell at the given column and row.
+     */
+    private static long cellKey(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    /**
+     * Compares points by longitude and then by latitude.
+     *
+     * @param a the first point.
+     * @param b the second point.
+     * @return a negative integer, zero, or a positive integer as a is less than, equal to, or greater than b.
+     */
+    private static int compare(Point a, Point b) {
+        int result = Double.compare(a.getX(), b.getX());
+        return result != 0 ? result : Double.compare(a.getY(), b.getY());
+    }
+
     /**
      * Adds an edge to this graph if it doesn't already exist using distance as the weight.
      *
@@ -172,7 +452,154 @@ public class MapGraph implements AStarGraph<Point> {
         if (!neighbors.containsKey(from)) {
             neighbors.put(from, new ArrayList<>());
         }
-        neighbors.get(from).add(new Edge<>(from, to, estimatedDistance(from, to)));
+        neighbors.get(from).add(new Edge<>(from, to, context.calcDistance(from, to)));
+    }
+
+    /**
+     * {@link Point} that also stores its position as a 3D unit vector so that heuristic distances between vertices
+     * avoid trigonometry. Equality and hashing are inherited from {@link PointImpl}, so a vertex is interchangeable
+     * with any other point at the same coordinates.
+     */
+    private static class Vertex extends PointImpl {
+        private final double ux;
+        private final double uy;
+        private final double uz;
+
+        /**
+         * Constructs a vertex at the given longitude and latitude.
+         *
+         * @param lon     the longitude in degrees.
+         * @param lat     the latitude in degrees.
+         * @param context the spatial context for the point.
+         */
+        Vertex(double lon, double lat, SpatialContext context) {
+            super(lon, lat, context);
+            double phi = Math.toRadians(lat);
+            double lambda = Math.toRadians(lon);
+            double cosPhi = Math.cos(phi);
+            ux = cosPhi * Math.cos(lambda);
+            uy = cosPhi * Math.sin(lambda);
+            uz = Math.sin(phi);
+        }
+
+        /**
+         * Returns the squared straight-line distance between this and the other vertex on the unit sphere.
+         *
+         * @param other the other vertex.
+         * @return the squared straight-line distance between this and the other vertex on the unit sphere.
+         */
+        double squaredChord(Vertex other) {
+            double dx = ux - other.ux;
+            double dy = uy - other.uy;
+            double dz = uz - other.uz;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Parses OSM XML files to find the ids of the nodes along the streets that the region keeps: every street segment
+     * with at least one endpoint in the region. Nodes precede the ways that use them in OSM files, so the ids of the
+     * nodes in the region are collected first and then looked up as each way ends. Ids are kept in sorted primitive
+     * arrays rather than a map of points, so that this pass needs little memory per node in the region and none per
+     * node outside it.
+     */
+    private class StreetNodes extends DefaultHandler {
+        private final Set<String> allowedHighwayTypes;
+        private long[] inside;
+        private int insideSize;
+        private boolean insideSorted;
+        private long[] needed;
+        private int neededSize;
+        private boolean inWay;
+        private boolean validWay;
+        private long[] path;
+        private int pathSize;
+
+        StreetNodes(Set<String> allowedHighwayTypes) {
+            this.allowedHighwayTypes = allowedHighwayTypes;
+            inside = new long[1024];
+            needed = new long[1024];
+            path = new long[16];
+        }
+
+        /**
+         * Returns a predicate that is true for the ids of the nodes along the streets that the region keeps.
+         *
+         * @return a predicate that is true for the ids of the nodes the region needs.
+         */
+        LongPredicate ids() {
+            long[] ids = Arrays.copyOf(needed, neededSize);
+            Arrays.sort(ids);
+            return id -> Arrays.binarySearch(ids, id) >= 0;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (qName.equals("node")) {
+                Point location = new PointImpl(Double.parseDouble(attributes.getValue("lon")),
+                        Double.parseDouble(attributes.getValue("lat")), context);
+                if (inRegion(location)) {
+                    inside = append(inside, insideSize, Long.parseLong(attributes.getValue("id")));
+                    insideSize += 1;
+                    insideSorted = false;
+                }
+            } else if (qName.equals("way")) {
+                inWay = true;
+                validWay = false;
+                pathSize = 0;
+            } else if (inWay && qName.equals("nd")) {
+                path = append(path, pathSize, Long.parseLong(attributes.getValue("ref")));
+                pathSize += 1;
+            } else if (inWay && qName.equals("tag") && attributes.getValue("k").equals("highway")) {
+                validWay = allowedHighwayTypes.contains(attributes.getValue("v"));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (qName.equals("way")) {
+                if (validWay) {
+                    for (int i = 1; i < pathSize; i += 1) {
+                        if (isInside(path[i - 1]) || isInside(path[i])) {
+                            needed = append(needed, neededSize, path[i - 1]);
+                            needed = append(needed, neededSize + 1, path[i]);
+                            neededSize += 2;
+                        }
+                    }
+                }
+                inWay = false;
+            }
+        }
+
+        /**
+         * Returns true if the node with the given id lies in the region.
+         *
+         * @param id the node id.
+         * @return true if the node lies in the region.
+         */
+        private boolean isInside(long id) {
+            if (!insideSorted) {
+                Arrays.sort(inside, 0, insideSize);
+                insideSorted = true;
+            }
+            return Arrays.binarySearch(inside, 0, insideSize, id) >= 0;
+        }
+
+        /**
+         * Stores the value at the given index, growing the array if needed.
+         *
+         * @param array the array.
+         * @param index the index, at most the length of the array.
+         * @param value the value.
+         * @return the array holding the value, which is a new array if the given array was full.
+         */
+        private static long[] append(long[] array, int index, long value) {
+            if (index == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+            array[index] = value;
+            return array;
+        }
     }
 
     /**
@@ -180,6 +607,10 @@ public class MapGraph implements AStarGraph<Point> {
      */
     private class Handler extends DefaultHandler {
         private final Set<String> allowedHighwayTypes;
+        /**
+         * True for the ids of the nodes to keep until the ways that use them are parsed.
+         */
+        private final LongPredicate keep;
         private final Map<Long, Point> byId;
         private final Map<String, List<Point>> byName;
         private String state;
@@ -187,10 +618,11 @@ public class MapGraph implements AStarGraph<Point> {
         private String name;
         private boolean validWay;
         private Point location;
-        private Queue<Point> path;
+        private List<Point> path;
 
-        Handler(Set<String> allowedHighwayTypes) {
+        Handler(Set<String> allowedHighwayTypes, LongPredicate keep) {
             this.allowedHighwayTypes = allowedHighwayTypes;
+            this.keep = keep;
             this.byId = new HashMap<>();
             this.byName = new HashMap<>();
             reset();
@@ -205,7 +637,7 @@ public class MapGraph implements AStarGraph<Point> {
             name = "";
             validWay = false;
             location = null;
-            path = new ArrayDeque<>();
+            path = new ArrayList<>();
         }
 
         /**
@@ -226,9 +658,10 @@ public class MapGraph implements AStarGraph<Point> {
             if (qName.equals("node")) {
                 state = "node";
                 id = Long.parseLong(attributes.getValue("id"));
-                location = context.getShapeFactory().pointLatLon(
+                location = new Vertex(
+                        Double.parseDouble(attributes.getValue("lon")),
                         Double.parseDouble(attributes.getValue("lat")),
-                        Double.parseDouble(attributes.getValue("lon"))
+                        context
                 );
             } else if (qName.equals("way")) {
                 state = "way";
@@ -261,19 +694,23 @@ public class MapGraph implements AStarGraph<Point> {
         @Override
         public void endElement(String uri, String localName, String qName) {
             if (qName.equals("way")) {
-                if (validWay && !path.isEmpty()) {
-                    Point from = path.remove();
-                    while (!path.isEmpty()) {
-                        Point to = path.remove();
-                        addEdge(from, to);
-                        addEdge(to, from);
-                        from = to;
+                if (validWay) {
+                    for (int i = 1; i < path.size(); i += 1) {
+                        Point from = path.get(i - 1);
+                        Point to = path.get(i);
+                        // Nodes that the region does not keep are missing, and neither endpoint is in the region.
+                        if (from != null && to != null && (inRegion(from) || inRegion(to))) {
+                            addEdge(from, to);
+                            addEdge(to, from);
+                        }
                     }
                 }
                 reset();
             } else if (qName.equals("node")) {
-                byId.put(id, location);
-                if (!name.isBlank()) {
+                if (keep.test(id)) {
+                    byId.put(id, location);
+                }
+                if (!name.isBlank() && inRegion(location)) {
                     byName.putIfAbsent(name, new ArrayList<>());
                     byName.get(name).add(location);
                 }
@@ -0,0 +1,299 @@
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of static map images in front of an {@link Upstream} image source. Images are kept in a bounded
+ * in-memory tier and in a bounded directory on disk, both evicting the least-recently-used image first and both
+ * treating images older than the time-to-live as absent. Keys are the SHA-256 hash of the canonical request path, so
+ * identical views share a single entry no matter which client asked for them.
+ *
+ * @see MapServer
+ */
+public class MapImageCache {
+    /**
+     * File name extension for images stored on disk.
+     */
+    private static final String EXTENSION = ".png";
+    /**
+     * File name extension for images being written to disk.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+    private final Upstream upstream;
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final Duration ttl;
+    private final Clock clock;
+    /**
+     * Access-ordered in-memory images, from least to most recently used.
+     */
+    private final LinkedHashMap<String, Entry> memory;
+    /**
+     * Access-ordered index of images stored on disk, from least to most recently used.
+     */
+    private final LinkedHashMap<String, Entry> disk;
+    private long memoryBytes;
+    private long diskBytes;
+
+    /**
+     * Constructs a cache in the given directory, indexing any images already stored there from a previous run and
+     * deleting any partial images left by a run that stopped while writing.
+     *
+     * @param upstream       the source for images that are not cached.
+     * @param directory      the directory for the disk tier.
+     * @param maxMemoryBytes the maximum total size of images held in memory.
+     * @param maxDiskBytes   the maximum total size of images stored on disk.
+     * @param ttl            how long an image stays valid after it is fetched.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    public MapImageCache(Upstream upstream, Path directory, long maxMemoryBytes, long maxDiskBytes, Duration ttl)
+            throws IOException {
+        this(upstream, directory, maxMemoryBytes, maxDiskBytes, ttl, Clock.systemUTC());
+    }
+
+    /**
+     * Constructs a cache in the given directory using the given clock to decide expiry.
+     *
+     * @param upstream       the source for images that are not cached.
+     * @param directory      the directory for the disk tier.
+     * @param maxMemoryBytes the maximum total size of images held in memory.
+     * @param maxDiskBytes   the maximum total size of images stored on disk.
+     * @param ttl            how long an image stays valid after it is fetched.
+     * @param clock          the clock used to timestamp and expire images.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    MapImageCache(Upstream upstream, Path directory, long maxMemoryBytes, long maxDiskBytes, Duration ttl,
+                  Clock clock) throws IOException {
+        this.upstream = upstream;
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttl = ttl;
+        this.clock = clock;
+        memory = new LinkedHashMap<>(16, 0.75f, true);
+        disk = new LinkedHashMap<>(16, 0.75f, true);
+
+        // Rebuild the disk index from the last run, oldest files first so that they are evicted first.
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(TEMP_EXTENSION)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        files = files.stream().filter(p -> p.getFileName().toString().endsWith(EXTENSION)).toList();
+        List<Map.Entry<Path, FileTime>> byTime = new ArrayList<>(files.size());
+        for (Path file : files) {
+            byTime.add(Map.entry(file, Files.getLastModifiedTime(file)));
+        }
+        byTime.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Path, FileTime> file : byTime) {
+            String name = file.getKey().getFileName().toString();
+            String key = name.substring(0, name.length() - EXTENSION.length());
+            long size = Files.size(file.getKey());
+            disk.put(key, new Entry(null, size, file.getValue().toMillis()));
+            diskBytes += size;
+        }
+        synchronized (this) {
+            evictDisk();
+        }
+    }
+
+    /**
+     * Returns the canonical cache key for the given request path.
+     *
+     * @param path the upstream request path, excluding the host and any credentials.
+     * @return the canonical cache key for the given request path.
+     */
+    public static String key(String path) {
+        return DigestUtils.sha256Hex(path);
+    }
+
+    /**
+     * Returns a future for the image at the given request path, fetching it from upstream only if neither tier holds
+     * a fresh copy. Cached images are returned as already-completed futures.
+     *
+     * @param path the upstream request path, excluding the host and any credentials.
+     * @return a future for the image bytes that completes exceptionally if the image is not cached and cannot be
+     * fetched.
+     */
+    public CompletableFuture<byte[]> get(String path) {
+        String key = key(path);
+        long now = clock.millis();
+        long fetchedAt;
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (fresh(entry, now)) {
+                    return CompletableFuture.completedFuture(entry.image);
+                }
+                memory.remove(key);
+                memoryBytes -= entry.size;
+            }
+            entry = disk.get(key);
+            if (entry != null && !fresh(entry, now)) {
+                removeDisk(key);
+                entry = null;
+            }
+            fetchedAt = entry == null ? -1 : entry.fetchedAt;
+        }
+        if (fetchedAt >= 0) {
+            try {
+                byte[] image = Files.readAllBytes(file(key));
+                putMemory(key, image, fetchedAt);
+                return CompletableFuture.completedFuture(image);
+            } catch (IOException e) {
+                // Evicted by another request since the index lookup or unreadable, so treat it as a miss.
+            }
+        }
+        return upstream.fetch(path).thenApply(image -> {
+            putMemory(key, image, now);
+            try {
+                putDisk(key, image, now);
+            } catch (IOException e) {
+                // The image is still served from memory; it is only missing from the disk tier.
+            }
+            return image;
+        });
+    }
+
+    /**
+     * Returns true if and only if the entry was fetched within the time-to-live.
+     *
+     * @param entry the cache entry.
+     * @param now   the current time in milliseconds.
+     * @return true if and only if the entry was fetched within the time-to-live.
+     */
+    private boolean fresh(Entry entry, long now) {
+        return now - entry.fetchedAt < ttl.toMillis();
+    }
+
+    /**
+     * Returns the path of the disk tier file for the given key.
+     *
+     * @param key the cache key.
+     * @return the path of the disk tier file for the given key.
+     */
+    private Path file(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * Adds the image to the memory tier, evicting least-recently-used images to stay within the byte budget.
+     *
+     * @param key       the cache key.
+     * @param image     the image bytes.
+     * @param fetchedAt the time the image was fetched from upstream.
+     */
+    private synchronized void putMemory(String key, byte[] image, long fetchedAt) {
+        if (image.length > maxMemoryBytes) {
+            return;
+        }
+        Entry old = memory.put(key, new Entry(image, image.length, fetchedAt));
+        if (old != null) {
+            memoryBytes -= old.size;
+        }
+        memoryBytes += image.length;
+        Iterator<Entry> lru = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= lru.next().size;
+            lru.remove();
+        }
+    }
+
+    /**
+     * Writes the image to the disk tier, evicting least-recently-used files to stay within the byte budget. The image
+     * is first written to a temporary file and then moved into place so that readers never see a partial image. The
+     * file is timestamped with the fetch time, which is read back as the fetch time when the cache restarts.
+     *
+     * @param key       the cache key.
+     * @param image     the image bytes.
+     * @param fetchedAt the time the image was fetched from upstream.
+     * @throws IOException if the image cannot be written.
+     */
+    private void putDisk(String key, byte[] image, long fetchedAt) throws IOException {
+        if (image.length > maxDiskBytes) {
+            return;
+        }
+        Path temp = Files.createTempFile(directory, key, TEMP_EXTENSION);
+        try {
+            Files.write(temp, image);
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(fetchedAt));
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        synchronized (this) {
+            Entry old = disk.put(key, new Entry(null, image.length, fetchedAt));
+            if (old != null) {
+                diskBytes -= old.size;
+            }
+            diskBytes += image.length;
+            evictDisk();
+        }
+    }
+
+    /**
+     * Deletes least-recently-used files until the disk tier is within its byte budget.
+     */
+    private void evictDisk() {
+        while (diskBytes > maxDiskBytes) {
+            removeDisk(disk.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Removes the given key from the disk tier index and deletes its file.
+     *
+     * @param key the cache key.
+     */
+    private void removeDisk(String key) {
+        Entry entry = disk.remove(key);
+        diskBytes -= entry.size;
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            // The index no longer refers to the file, so a leftover file only wastes space until the next restart.
+        }
+    }
+
+    /**
+     * Source of static map images that are not in the cache.
+     */
+    @FunctionalInterface
+    public interface Upstream {
+        /**
+         * Returns a future for the image at the given request path. Implementations should not block the caller.
+         *
+         * @param path the request path, excluding the host and any credentials.
+         * @return a future for the image bytes that completes exceptionally if the image cannot be fetched.
+         */
+        CompletableFuture<byte[]> fetch(String path);
+    }
+
+    /**
+     * Cached image with its size and fetch time. Disk tier entries leave the image null.
+     */
+    private static class Entry {
+        private final byte[] image;
+        private final long size;
+        private final long fetchedAt;
+
+        Entry(byte[] image, long size, long fetchedAt) {
+            this.image = image;
+            this.size = size;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -1,13 +1,40 @@
+import graphs.shortestpaths.AStarSolver;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
 import io.javalin.validation.ValidationException;
-import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.locationtech.spatial4j.context.SpatialContext;
 import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.Rectangle;
 import org.locationtech.spatial4j.shape.ShapeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.net.*;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
 
 /**
  * Run the Husky Maps server.
@@ -33,44 +60,672 @@ public class MapServer {
      * Maximum number of autocomplete search results.
      */
     private static final int MAX_MATCHES = 10;
+    /**
+     * Maximum number of location pins drawn on a map image.
+     */
+    private static final int MAX_PINS = 50;
+    /**
+     * Maximum width and height of a map image in pixels, which is also the largest size the upstream API accepts.
+     */
+    private static final int MAX_MAP_SIZE = 1280;
+    /**
+     * Default and maximum number of places returned by a nearby lookup.
+     */
+    private static final int DEFAULT_NEARBY = 10;
+    private static final int MAX_NEARBY = 100;
+    /**
+     * Maximum number of prefixes in the search result cache.
+     */
+    private static final int MAX_SEARCH_CACHE_ENTRIES = 100_000;
+    /**
+     * Length of the longest search prefixes cached at startup.
+     */
+    private static final int PREWARM_PREFIX_LENGTH = 2;
+    /**
+     * Default base URL for the static map image API.
+     */
+    private static final String UPSTREAM_URL = "https://api.mapbox.com/";
+    /**
+     * Maximum total size of static map images cached in memory.
+     */
+    private static final long MAX_MEMORY_CACHE_BYTES = 64L << 20;
+    /**
+     * Maximum total size of static map images cached on disk.
+     */
+    private static final long MAX_DISK_CACHE_BYTES = 1L << 30;
+    /**
+     * How long a cached static map image may be served before it is fetched again.
+     */
+    private static final Duration CACHE_TTL = Duration.ofDays(1);
+    /**
+     * Maximum time to establish a connection to the static map image API.
+     */
+    private static final Duration UPSTREAM_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    /**
+     * Maximum time to wait for a complete response from the static map image API.
+     */
+    private static final Duration UPSTREAM_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * Maximum number of concurrent requests to the static map image API.
+     */
+    private static final int MAX_UPSTREAM_IN_FLIGHT = 64;
+    /**
+     * Default maximum number of request threads when running in the platform thread execution mode.
+     */
+    private static final int MAX_THREADS = 200;
+    /**
+     * Maximum total size of rendered map tiles cached in memory.
+     */
+    private static final long MAX_TILE_CACHE_BYTES = 128L << 20;
+    /**
+     * Largest tile zoom level rendered in the background at startup.
+     */
+    private static final int PRERENDER_ZOOM = 14;
+    /**
+     * Context attribute holding the {@link System#nanoTime()} reading when a request acquired its permit.
+     */
+    private static final String PERMIT_ATTRIBUTE = "permit";
+    /**
+     * Seconds a client should wait before retrying a request for data that is still loading.
+     */
+    private static final int LOADING_RETRY_AFTER_SECONDS = 5;
+    /**
+     * Default fraction of traced requests written to the debug log.
+     */
+    private static final double TRACE_SAMPLE_RATE = 0.01;
+    /**
+     * Free heap required to reload the map data, as a multiple of the heap currently in use. Garbage counts as used,
+     * so the check errs on the side of refusing a reload.
+     */
+    private static final double RELOAD_HEADROOM = 1.2;
+    /**
+     * Maximum time to wait for requests still using replaced map data before another reload may start.
+     */
+    private static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(1);
+    private static final Logger LOG = LoggerFactory.getLogger(MapServer.class);
+    /**
+     * Identifies this process in the map data versions reported to a {@link ShardCoordinator}, since version numbers
+     * start over when a shard restarts.
+     */
+    private static final String INSTANCE = UUID.randomUUID().toString();
 
     public static void main(String[] args) throws Exception {
         SpatialContext context = SpatialContext.GEO;
         ShapeFactory factory = context.getShapeFactory();
-        MapGraph map = new MapGraph(OSM_DB_PATH, PLACES_PATH, context);
+
+        Metrics metrics = new Metrics();
+        Metrics.Histogram mapLatency = metrics.timer("http_request_duration_seconds",
+                "Time to handle a request.", "endpoint", "/map");
+        Metrics.Histogram searchLatency = metrics.timer("http_request_duration_seconds",
+                "Time to handle a request.", "endpoint", "/search");
+        Metrics.Histogram nearbyLatency = metrics.timer("http_request_duration_seconds",
+                "Time to handle a request.", "endpoint", "/nearby");
+        Metrics.Histogram snapLatency = metrics.timer("map_snap_duration_seconds",
+                "Time to snap route endpoints to the closest graph vertices.");
+        Metrics.Histogram routeLatency = metrics.timer("map_route_duration_seconds",
+                "Time to compute a shortest path with A* search.");
+        Metrics.Histogram settledVertices = metrics.histogram("map_route_settled_vertices",
+                "Number of vertices removed from the A* perimeter per route.");
+        Metrics.Histogram locationsLatency = metrics.timer("map_locations_duration_seconds",
+                "Time to look up the locations matching a search term.");
+        Metrics.Histogram upstreamLatency = metrics.timer("map_upstream_duration_seconds",
+                "Time to fetch a static map image from the upstream.");
+        Metrics.Histogram searchMatches = metrics.histogram("search_autocomplete_matches",
+                "Number of autocomplete matches per search prefix.");
+        LongConsumer recordSearchMatches = searchMatches::record;
+
+        MapImageCache images = new MapImageCache(upstream(upstreamLatency), cacheDirectory(),
+                MAX_MEMORY_CACHE_BYTES, MAX_DISK_CACHE_BYTES, CACHE_TTL);
+        boolean localImages = localImages();
+        double traceSampleRate = traceSampleRate();
+
+        // Load the data in the background so that the server accepts connections immediately. The place index built
+        // from the place-importance data answers searches until the graph replaces it with its own index. Its results
+        // are provisional, since they include names the graph has no location for. The place-importance data has no
+        // locations to tell which places lie in a region, so a region waits for its graph instead.
+        AtomicReference<SearchCache> places = new AtomicReference<>();
+        Versioned<MapData> maps = new Versioned<>();
+        AtomicReference<Throwable> loadFailure = new AtomicReference<>();
+        AtomicBoolean reloading = new AtomicBoolean();
+        ExecutorService loader = Executors.newFixedThreadPool(2);
+        Rectangle region = region(factory);
+        if (region == null) {
+            CompletableFuture.supplyAsync(() -> searchCache(PlaceIndex.load(PLACES_PATH)), loader)
+                    .whenComplete((index, error) -> {
+                        if (error == null) {
+                            places.compareAndSet(null, index);
+                        } else {
+                            failed(loadFailure, error);
+                        }
+                    });
+        }
+        CompletableFuture.supplyAsync(() -> loadMap(context, region), loader).whenComplete((data, error) -> {
+            if (error == null) {
+                places.set(searchCache(data.graph.places()));
+                maps.swap(data);
+            } else {
+                failed(loadFailure, error);
+            }
+        });
+        loader.shutdown();
+        metrics.gauge("map_data_version", "Version of the loaded map data, increasing with each reload.",
+                maps::number);
+        metrics.counter("search_cache_requests_total",
+                "Searches by how the result was found: cached, narrowed from a cached prefix, or computed.",
+                () -> places.get() != null ? places.get().hits() : 0, "result", "hit");
+        metrics.counter("search_cache_requests_total",
+                "Searches by how the result was found: cached, narrowed from a cached prefix, or computed.",
+                () -> places.get() != null ? places.get().narrowed() : 0, "result", "narrowed");
+        metrics.counter("search_cache_requests_total",
+                "Searches by how the result was found: cached, narrowed from a cached prefix, or computed.",
+                () -> places.get() != null ? places.get().misses() : 0, "result", "miss");
+        metrics.gauge("search_cache_entries", "Prefixes in the search result cache.",
+                () -> places.get() != null ? places.get().size() : 0);
+
         Javalin app = Javalin.create(config -> {
             config.spaRoot.addFile("/", "index.html");
+            if (virtualThreads()) {
+                config.useVirtualThreads = true;
+            } else {
+                int maxThreads = maxThreads();
+                config.jetty.threadPool = new QueuedThreadPool(maxThreads, Math.min(8, maxThreads));
+            }
         }).start(port());
+        app.get("/health", ctx -> {
+            if (loadFailure.get() != null) {
+                ctx.status(HttpStatus.INTERNAL_SERVER_ERROR).result("Failed to load map data");
+            } else {
+                ctx.result("OK");
+            }
+        });
+        app.get("/ready", ctx -> {
+            boolean ready = maps.get() != null;
+            ctx.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.json(Map.of("search", places.get() != null, "routing", ready, "version", maps.number(),
+                    "reloading", reloading.get()));
+        });
+        // Map data can be reloaded without a restart only when requests can be authorized with an admin token.
+        String adminToken = System.getenv("ADMIN_TOKEN");
+        if (adminToken != null) {
+            ExecutorService reloader = Executors.newSingleThreadExecutor();
+            app.before("/admin/reload", ctx -> requireLoaded(ctx, maps.get()));
+            app.post("/admin/reload", ctx -> {
+                if (!authorized(ctx, adminToken)) {
+                    ctx.status(HttpStatus.FORBIDDEN);
+                    return;
+                }
+                if (!reloading.compareAndSet(false, true)) {
+                    ctx.status(HttpStatus.CONFLICT).result("Reload already in progress");
+                    return;
+                }
+                // The new data is about as large as the data it replaces, so both must fit in the heap at once.
+                MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                long free = Runtime.getRuntime().maxMemory() - heap.getUsed();
+                if (free < heap.getUsed() * RELOAD_HEADROOM) {
+                    reloading.set(false);
+                    ctx.status(HttpStatus.SERVICE_UNAVAILABLE).result("Not enough free heap for a second copy of "
+                            + "the map data: " + heap.getUsed() + " bytes used, " + free + " bytes free");
+                    return;
+                }
+                long version = maps.number() + 1;
+                CompletableFuture.supplyAsync(() -> loadMap(context, region), reloader).thenCompose(data -> {
+                    places.set(searchCache(data.graph.places()));
+                    Versioned.Version<MapData> previous = maps.swap(data);
+                    LOG.info("Reloaded map data as version {}", version);
+                    // Stop the previous renderer's threads once its requests finish. Requests still running after
+                    // the drain timeout keep their renderer, but no longer hold back another reload. The timeout
+                    // applies to a copy so that it does not complete the drained future itself.
+                    previous.drained().thenRun(() -> {
+                        previous.value().renderer.close();
+                        LOG.info("Drained requests using map data version {}", version - 1);
+                    });
+                    return previous.drained().copy().orTimeout(DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                            .exceptionally(error -> {
+                                LOG.warn("Requests using map data version {} did not finish within {}",
+                                        version - 1, DRAIN_TIMEOUT);
+                                return null;
+                            });
+                }).whenComplete((drained, error) -> {
+                    if (error != null) {
+                        LOG.warn("Reload to map data version {} did not complete", version, error);
+                    }
+                    reloading.set(false);
+                });
+                ctx.status(HttpStatus.ACCEPTED).json(Map.of("version", version));
+            });
+        }
+        // Requests for data that is still loading are turned away before they take a concurrency permit.
+        app.before("/map/*", ctx -> requireLoaded(ctx, maps.get()));
+        app.before("/tiles/*", ctx -> requireLoaded(ctx, maps.get()));
+        app.before("/search", ctx -> requireLoaded(ctx, places.get()));
+        app.before("/nearby", ctx -> requireLoaded(ctx, maps.get()));
+        // Cheap searches and expensive map views get separate limits so that neither can starve the other.
+        limit(app, "/map/*", "/map", new ConcurrencyLimiter(32, 4, 256, 64, 250, 2000), metrics);
+        limit(app, "/tiles/*", "/tiles", new ConcurrencyLimiter(32, 4, 256, 256, 250, 1000), metrics);
+        limit(app, "/search", "/search", new ConcurrencyLimiter(64, 8, 512, 128, 50, 50), metrics);
+        limit(app, "/nearby", "/nearby", new ConcurrencyLimiter(64, 8, 512, 128, 50, 50), metrics);
+        SingleFlight<String, MapView> mapRequests = new SingleFlight<>();
+        metrics.counter("map_requests_executed_total", "Map requests that computed their own response.",
+                mapRequests::leaders);
+        metrics.counter("map_requests_coalesced_total", "Map requests that shared a concurrent identical request.",
+                mapRequests::followers);
+        metrics.gauge("map_requests_in_flight", "Distinct map requests currently being computed.",
+                mapRequests::inFlight);
         app.get("/map/{lon},{lat},{zoom}/{width}x{height}", ctx -> {
-            double lon = ctx.pathParamAsClass("lon", Double.class).get();
-            double lat = ctx.pathParamAsClass("lat", Double.class).get();
-            int zoom = ctx.pathParamAsClass("zoom", Integer.class).get();
-            int width = ctx.pathParamAsClass("width", Integer.class).get();
-            int height = ctx.pathParamAsClass("height", Integer.class).get();
+            long requestStart = System.nanoTime();
+            // Panning the map freely moves the center past the antimeridian.
+            double lon = wrapLongitude(ctx.pathParamAsClass("lon", Double.class)
+                    .check(Double::isFinite, "longitude out of range").get());
+            double lat = ctx.pathParamAsClass("lat", Double.class)
+                    .check(value -> value >= -90 && value <= 90, "latitude out of range").get();
+            // Map images are drawn from tiles two zoom levels deeper, so the deepest tiles bound the zoom level.
+            int zoom = ctx.pathParamAsClass("zoom", Integer.class)
+                    .check(value -> value >= 0 && value <= TileRenderer.MAX_ZOOM - 2, "zoom out of range").get();
+            int width = ctx.pathParamAsClass("width", Integer.class)
+                    .check(value -> value >= 1 && value <= MAX_MAP_SIZE, "width out of range").get();
+            int height = ctx.pathParamAsClass("height", Integer.class)
+                    .check(value -> value >= 1 && value <= MAX_MAP_SIZE, "height out of range").get();
             String term = ctx.queryParam("term");
 
             Point center = factory.pointLatLon(lat, lon);
-            List<Point> route;
+            Point start;
+            Point goal;
             try {
                 double startLon = ctx.queryParamAsClass("startLon", Double.class).get();
                 double startLat = ctx.queryParamAsClass("startLat", Double.class).get();
                 double goalLon = ctx.queryParamAsClass("goalLon", Double.class).get();
                 double goalLat = ctx.queryParamAsClass("goalLat", Double.class).get();
-                Point start = factory.pointLatLon(startLat, startLon);
-                Point goal = factory.pointLatLon(goalLat, goalLon);
-                route = map.shortestPath(start, goal);
+                start = factory.pointLatLon(startLat, startLon);
+                goal = factory.pointLatLon(goalLat, goalLon);
             } catch (ValidationException e) {
-                route = List.of();
+                start = null;
+                goal = null;
             }
-            List<Point> locations = map.getLocations(term);
-            URL staticImageURL = url(center, zoom, width, height, route, locations);
-            ctx.result(new Base64InputStream(staticImageURL.openStream(), true));
+
+            // Identical concurrent views of the same map data share one route computation and one upstream image
+            // fetch. The request keeps using the map data it started with even if the data is reloaded meanwhile.
+            Versioned.Version<MapData> version = maps.acquire();
+            String key = lon + "," + lat + "," + zoom + "/" + width + "x" + height + "?" + term
+                    + "&" + start + "&" + goal + "#" + version.number();
+            Point routeStart = start;
+            Point routeGoal = goal;
+            MapGraph map = version.value().graph;
+            TileRenderer tiles = version.value().renderer;
+            ctx.future(() -> mapRequests.run(key, () -> {
+                Trace trace = new Trace();
+                List<Point> route = List.of();
+                if (routeStart != null) {
+                    Point from = map.closest(routeStart);
+                    Point to = map.closest(routeGoal);
+                    snapLatency.record(trace.mark("snap"));
+                    AStarSolver<Point> solver = new AStarSolver<>(map, from, to);
+                    route = solver.solution();
+                    routeLatency.record(trace.mark("route"));
+                    settledVertices.record(solver.settled());
+                    trace.count("settled", solver.settled());
+                }
+                Rectangle viewport = TileRenderer.viewport(factory, center, zoom, width, height);
+                List<Point> locations = map.getLocations(term, viewport, MAX_PINS);
+                locationsLatency.record(trace.mark("locations"));
+                trace.count("pins", locations.size());
+                CompletableFuture<byte[]> image;
+                if (localImages) {
+                    image = tiles.view(center, zoom, width, height, route, locations);
+                } else {
+                    String path = path(center, zoom, width, height, route, locations);
+                    trace.mark("url");
+                    image = images.get(path);
+                }
+                return image.thenApply(png -> {
+                    trace.mark(localImages ? "render" : "upstream");
+                    byte[] encoded = Base64.encodeBase64(png, true);
+                    trace.mark("encode");
+                    return new MapView(encoded, trace);
+                });
+            }).handle((view, error) -> {
+                version.release();
+                if (error == null) {
+                    ctx.header("Server-Timing", view.trace.header(requestStart));
+                    ctx.result(view.image);
+                    logTrace(ctx, view.trace, traceSampleRate);
+                } else {
+                    ctx.status(errorStatus(error));
+                }
+                mapLatency.recordSince(requestStart);
+                return null;
+            }));
+        });
+        app.get("/tiles/{z}/{x}/{y}.png", ctx -> {
+            int z = ctx.pathParamAsClass("z", Integer.class)
+                    .check(value -> value >= 0 && value <= TileRenderer.MAX_ZOOM, "zoom out of range").get();
+            int x = ctx.pathParamAsClass("x", Integer.class)
+                    .check(value -> value >= 0 && value < 1 << z, "column out of range").get();
+            int y = ctx.pathParamAsClass("y", Integer.class)
+                    .check(value -> value >= 0 && value < 1 << z, "row out of range").get();
+            Versioned.Version<MapData> version = maps.acquire();
+            CompletableFuture<byte[]> tile;
+            try {
+                tile = version.value().renderer.tile(z, x, y);
+            } catch (RuntimeException e) {
+                version.release();
+                throw e;
+            }
+            ctx.future(() -> tile
+                    .whenComplete((png, error) -> version.release())
+                    .thenAccept(png -> ctx.contentType("image/png").result(png)));
+        });
+        app.get("/metrics", ctx -> {
+            ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+            ctx.result(metrics.scrape());
         });
         app.get("/search", ctx -> {
-            ctx.json(map.getLocationsByPrefix(ctx.queryParam("term"), MAX_MATCHES));
+            long requestStart = System.nanoTime();
+            // Clients may send the map center so that nearby places rank higher.
+            Point near = null;
+            if (ctx.queryParam("lat") != null && ctx.queryParam("lon") != null) {
+                double lat = ctx.queryParamAsClass("lat", Double.class)
+                        .check(value -> value >= -90 && value <= 90, "latitude out of range").get();
+                double lon = ctx.queryParamAsClass("lon", Double.class)
+                        .check(Double::isFinite, "longitude out of range").get();
+                near = factory.pointLatLon(lat, wrapLongitude(lon));
+            }
+            // Until the graph loads, results come from the place-importance data and change once it loads, so they
+            // are marked as provisional and clients must not store them.
+            boolean provisional = maps.get() == null;
+            Trace trace = new Trace();
+            String term = ctx.queryParamAsClass("term", String.class).getOrDefault("");
+            SearchCache.Result result = places.get().search(term, near, recordSearchMatches);
+            trace.mark("search");
+            String etag = result.etag();
+            trace.mark("serialize");
+            trace.count("names", result.names().size());
+            if (provisional) {
+                ctx.header("Search-Provisional", "true");
+                ctx.header("Cache-Control", "no-store");
+            } else {
+                ctx.header("ETag", etag);
+            }
+            ctx.header("Server-Timing", trace.header(requestStart));
+            logTrace(ctx, trace, traceSampleRate);
+            if (!provisional && notModified(ctx.header("If-None-Match"), etag)) {
+                ctx.status(HttpStatus.NOT_MODIFIED);
+            } else {
+                ctx.contentType("application/json").result(result.json());
+            }
+            searchLatency.recordSince(requestStart);
+        });
+        app.get("/nearby", ctx -> {
+            long requestStart = System.nanoTime();
+            double lat = ctx.queryParamAsClass("lat", Double.class)
+                    .check(value -> value >= -90 && value <= 90, "latitude out of range").get();
+            double lon = ctx.queryParamAsClass("lon", Double.class)
+                    .check(value -> value >= -180 && value <= 180, "longitude out of range").get();
+            int k = ctx.queryParamAsClass("k", Integer.class)
+                    .check(value -> value >= 1 && value <= MAX_NEARBY, "k out of range").getOrDefault(DEFAULT_NEARBY);
+            Versioned.Version<MapData> version = maps.acquire();
+            try {
+                ctx.json(version.value().graph.nearby(factory.pointLatLon(lat, lon), k));
+            } finally {
+                version.release();
+            }
+            nearbyLatency.recordSince(requestStart);
+        });
+        if (region != null) {
+            shardEndpoints(app, maps, factory);
+        }
+    }
+
+    /**
+     * Adds the endpoints that a {@link ShardCoordinator} uses to route across the region served by this process.
+     * Coordinates are sent as {@code [lon, lat]} arrays and distances in degrees, with -1 for unreachable vertices.
+     * Every response includes the {@code version} of the map data it was computed from, which changes whenever the
+     * data is reloaded or the shard restarts, so that the coordinator can tell when its copy of the boundary is stale.
+     * <ul>
+     *     <li>{@code /shard/boundary} returns the region, the boundary vertices, and the distances between them.</li>
+     *     <li>{@code /shard/distances?lon&lat} returns the vertex closest to the point and its distances to the
+     *     boundary vertices, plus its distance to the vertex closest to {@code toLon} and {@code toLat} if given.</li>
+     *     <li>{@code /shard/route?fromLon&fromLat&toLon&toLat} returns the {@code path} of vertices along the
+     *     shortest path within the region between the vertices closest to the two points.</li>
+     * </ul>
+     *
+     * @param app     the Javalin app.
+     * @param maps    the map data of the region.
+     * @param factory the shape factory for parsing points.
+     */
+    static void shardEndpoints(Javalin app, Versioned<MapData> maps, ShapeFactory factory) {
+        app.before("/shard/*", ctx -> requireLoaded(ctx, maps.get()));
+        app.get("/shard/boundary", ctx -> {
+            Versioned.Version<MapData> version = maps.acquire();
+            try {
+                RegionShard shard = version.value().shard;
+                Rectangle region = shard.graph().region();
+                ctx.json(Map.of(
+                        "version", dataVersion(version),
+                        "region", new double[]{region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY()},
+                        "boundary", coordinates(shard.graph().boundary()),
+                        "table", shard.table()));
+            } finally {
+                version.release();
+            }
+        });
+        app.get("/shard/distances", ctx -> {
+            Point point = factory.pointXY(ctx.queryParamAsClass("lon", Double.class).get(),
+                    ctx.queryParamAsClass("lat", Double.class).get());
+            Versioned.Version<MapData> version = maps.acquire();
+            try {
+                RegionShard shard = version.value().shard;
+                Point from = shard.graph().closest(point);
+                Map<String, Object> result = new HashMap<>();
+                result.put("version", dataVersion(version));
+                result.put("vertex", new double[]{from.getLon(), from.getLat()});
+                result.put("boundary", shard.distances(from));
+                if (ctx.queryParam("toLon") != null) {
+                    Point to = shard.graph().closest(factory.pointXY(ctx.queryParamAsClass("toLon", Double.class).get(),
+                            ctx.queryParamAsClass("toLat", Double.class).get()));
+                    result.put("to", shard.distances(from, List.of(to))[0]);
+                }
+                ctx.json(result);
+            } finally {
+                version.release();
+            }
+        });
+        app.get("/shard/route", ctx -> {
+            Point from = factory.pointXY(ctx.queryParamAsClass("fromLon", Double.class).get(),
+                    ctx.queryParamAsClass("fromLat", Double.class).get());
+            Point to = factory.pointXY(ctx.queryParamAsClass("toLon", Double.class).get(),
+                    ctx.queryParamAsClass("toLat", Double.class).get());
+            Versioned.Version<MapData> version = maps.acquire();
+            try {
+                ctx.json(Map.of(
+                        "version", dataVersion(version),
+                        "path", coordinates(version.value().graph.shortestPath(from, to))));
+            } finally {
+                version.release();
+            }
+        });
+    }
+
+    /**
+     * Returns the identifier of the given map data version reported to a {@link ShardCoordinator}.
+     *
+     * @param version the map data version.
+     * @return the identifier of the given map data version.
+     */
+    private static String dataVersion(Versioned.Version<MapData> version) {
+        return INSTANCE + "/" + version.number();
+    }
+
+    /**
+     * Returns the coordinates of the given points as {@code [lon, lat]} arrays.
+     *
+     * @param points the points.
+     * @return the coordinates of the given points.
+     */
+    private static double[][] coordinates(List<Point> points) {
+        double[][] result = new double[points.size()][];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = new double[]{points.get(i).getLon(), points.get(i).getLat()};
+        }
+        return result;
+    }
+
+    /**
+     * Applies the concurrency limiter to every request matching the given path. Requests that cannot acquire a
+     * permit receive 503 Service Unavailable with a {@code Retry-After} header without running the endpoint handler.
+     * Server errors and slow responses count against the limit.
+     *
+     * @param app      the Javalin app.
+     * @param path     the path pattern for the before and after handlers.
+     * @param endpoint the endpoint label for the limiter metrics.
+     * @param limiter  the limiter for the endpoint.
+     * @param metrics  the registry for the limiter metrics.
+     */
+    private static void limit(Javalin app, String path, String endpoint, ConcurrencyLimiter limiter,
+                              Metrics metrics) {
+        metrics.gauge("http_concurrency_limit", "Current adaptive concurrency limit.",
+                limiter::limit, "endpoint", endpoint);
+        metrics.gauge("http_requests_in_flight", "Requests currently holding a concurrency permit.",
+                limiter::inFlight, "endpoint", endpoint);
+        metrics.counter("http_requests_admitted_total", "Requests that acquired a concurrency permit.",
+                limiter::accepted, "endpoint", endpoint);
+        metrics.counter("http_requests_queued_total", "Requests that waited for a concurrency permit.",
+                limiter::queued, "endpoint", endpoint);
+        metrics.counter("http_requests_shed_total", "Requests rejected with 503 by admission control.",
+                limiter::rejected, "endpoint", endpoint);
+        app.before(path, ctx -> {
+            if (limiter.tryAcquire()) {
+                ctx.attribute(PERMIT_ATTRIBUTE, System.nanoTime());
+            } else {
+                ctx.header("Retry-After", "1");
+                ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+                ctx.skipRemainingHandlers();
+            }
+        });
+        app.after(path, ctx -> {
+            Long start = ctx.attribute(PERMIT_ATTRIBUTE);
+            if (start != null) {
+                limiter.release(System.nanoTime() - start, ctx.status().getCode() < 500);
+            }
         });
     }
 
+    /**
+     * Responds with 503 Service Unavailable and skips the endpoint handler if the data it needs is still loading.
+     *
+     * @param ctx    the request context.
+     * @param loaded the data needed by the endpoint, or null if it is still loading.
+     */
+    private static void requireLoaded(Context ctx, Object loaded) {
+        if (loaded == null) {
+            ctx.header("Retry-After", String.valueOf(LOADING_RETRY_AFTER_SECONDS));
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.skipRemainingHandlers();
+        }
+    }
+
+    /**
+     * Writes the stage timings and counts of a sample of requests to the debug log.
+     *
+     * @param ctx        the request context.
+     * @param trace      the trace of the request.
+     * @param sampleRate the fraction of requests to log.
+     */
+    private static void logTrace(Context ctx, Trace trace, double sampleRate) {
+        if (LOG.isDebugEnabled() && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            LOG.debug("{} {} {}", ctx.path(), ctx.queryString(), trace);
+        }
+    }
+
+    /**
+     * Returns the given finite longitude wrapped into the range [-180, 180).
+     *
+     * @param lon the longitude in degrees.
+     * @return the equivalent longitude in [-180, 180).
+     */
+    static double wrapLongitude(double lon) {
+        return lon - 360 * Math.floor((lon + 180) / 360);
+    }
+
+    /**
+     * Returns true if the {@code If-None-Match} request header matches the entity tag of the current response.
+     *
+     * @param ifNoneMatch the {@code If-None-Match} header value, or null if absent.
+     * @param etag        the quoted entity tag of the current response.
+     * @return true if the client already has the current response.
+     */
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.strip();
+            // If-None-Match uses weak comparison, so ignore any weak indicator.
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the map graph from the data files and prerenders the tiles of its low zoom levels. The graph of a region
+     * also gets its boundary distance table.
+     *
+     * @param context the spatial context for the map graph.
+     * @param region  the region to load, or null for the whole map.
+     * @return the map graph and its tile renderer.
+     */
+    private static MapData loadMap(SpatialContext context, Rectangle region) {
+        MapGraph map;
+        try {
+            map = new MapGraph(OSM_DB_PATH, PLACES_PATH, context, region);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+        TileRenderer tiles = new TileRenderer(map, context, MAX_TILE_CACHE_BYTES);
+        tiles.prerender(PRERENDER_ZOOM);
+        return new MapData(map, tiles, region != null ? new RegionShard(map) : null);
+    }
+
+    /**
+     * Returns true if the request carries the admin token as a bearer token.
+     *
+     * @param ctx   the request context.
+     * @param token the admin token.
+     * @return true if the request carries the admin token.
+     */
+    private static boolean authorized(Context ctx, String token) {
+        String authorization = ctx.header("Authorization");
+        return authorization != null && MessageDigest.isEqual(
+                authorization.getBytes(StandardCharsets.UTF_8),
+                ("Bearer " + token).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a search result cache for the given index, prewarmed with the results for short prefixes.
+     *
+     * @param index the place index.
+     * @return a search result cache for the given index.
+     */
+    private static SearchCache searchCache(PlaceIndex index) {
+        SearchCache cache = new SearchCache(index, MAX_MATCHES, MAX_SEARCH_CACHE_ENTRIES);
+        cache.prewarm(PREWARM_PREFIX_LENGTH);
+        return cache;
+    }
+
+    /**
+     * Records the first failure to load the map data so that the health check reports it.
+     *
+     * @param loadFailure the first failure to load the map data.
+     * @param error       the exception that loading completed with.
+     */
+    private static void failed(AtomicReference<Throwable> loadFailure, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (loadFailure.compareAndSet(null, cause)) {
+            LOG.error("Failed to load map data", cause);
+        }
+    }
+
     /**
      * Returns the port for communicating with the server.
      *
@@ -85,18 +740,148 @@ public class MapServer {
     }
 
     /**
-     * Return the API URL for retrieving the map image.
+     * Returns true if requests should run on virtual threads, or false if they should run on a bounded pool of
+     * platform threads. Set the {@code EXECUTION_MODE} environment variable to {@code virtual} or {@code platform}.
+     *
+     * @return true if requests should run on virtual threads.
+     */
+    private static boolean virtualThreads() {
+        String mode = System.getenv("EXECUTION_MODE");
+        if (mode == null || mode.equals("platform")) {
+            return false;
+        } else if (mode.equals("virtual")) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unknown EXECUTION_MODE: " + mode);
+    }
+
+    /**
+     * Returns true if map images should be rendered locally from the map graph, or false if they should be fetched
+     * from the static map image API. Set the {@code MAP_SOURCE} environment variable to {@code local} or
+     * {@code upstream}.
+     *
+     * @return true if map images should be rendered locally.
+     */
+    private static boolean localImages() {
+        String source = System.getenv("MAP_SOURCE");
+        if (source == null || source.equals("upstream")) {
+            return false;
+        } else if (source.equals("local")) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unknown MAP_SOURCE: " + source);
+    }
+
+    /**
+     * Returns the fraction of traced requests whose stage timings are written to the debug log. Set the
+     * {@code TRACE_SAMPLE_RATE} environment variable to a number from 0 to 1. The log only includes requests when
+     * debug logging is enabled for this class, for example with {@code -Dorg.slf4j.simpleLogger.log.MapServer=debug}.
+     *
+     * @return the fraction of traced requests written to the debug log.
+     */
+    private static double traceSampleRate() {
+        String rate = System.getenv("TRACE_SAMPLE_RATE");
+        if (rate != null) {
+            return Double.parseDouble(rate);
+        }
+        return TRACE_SAMPLE_RATE;
+    }
+
+    /**
+     * Returns the maximum number of request threads in the platform thread execution mode.
+     *
+     * @return the maximum number of request threads in the platform thread execution mode.
+     */
+    private static int maxThreads() {
+        String maxThreads = System.getenv("MAX_THREADS");
+        if (maxThreads != null) {
+            return Integer.parseInt(maxThreads);
+        }
+        return MAX_THREADS;
+    }
+
+    /**
+     * Returns the region of the map served by this process as one shard of a map split across several processes (see
+     * {@link ShardCoordinator}). Set the {@code REGION} environment variable to the western longitude, southern
+     * latitude, eastern longitude, and northern latitude separated by commas.
+     *
+     * @param factory the shape factory for the region.
+     * @return the region of the map served by this process, or null for the whole map.
+     */
+    private static Rectangle region(ShapeFactory factory) {
+        String region = System.getenv("REGION");
+        if (region == null) {
+            return null;
+        }
+        String[] bounds = region.split(",");
+        if (bounds.length != 4) {
+            throw new IllegalArgumentException("REGION must be minLon,minLat,maxLon,maxLat: " + region);
+        }
+        return factory.rect(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[2]),
+                Double.parseDouble(bounds[1]), Double.parseDouble(bounds[3]));
+    }
+
+    /**
+     * Returns the directory for the disk tier of the static map image cache.
+     *
+     * @return the directory for the disk tier of the static map image cache.
+     */
+    private static Path cacheDirectory() {
+        String directory = System.getenv("CACHE_DIR");
+        if (directory != null) {
+            return Path.of(directory);
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "huskymaps-cache");
+    }
+
+    /**
+     * Returns the source for static map images. Setting the {@code UPSTREAM_URL} environment variable replaces the
+     * MapBox API with another server, such as a local {@link StubUpstream}.
+     *
+     * @param latency the histogram recording the time of each fetch.
+     * @return the source for static map images.
+     */
+    private static MapImageCache.Upstream upstream(Metrics.Histogram latency) {
+        String url = System.getenv("UPSTREAM_URL");
+        HttpUpstream upstream = new HttpUpstream(url != null ? url : UPSTREAM_URL, System.getenv("TOKEN"),
+                UPSTREAM_CONNECT_TIMEOUT, UPSTREAM_RESPONSE_TIMEOUT, MAX_UPSTREAM_IN_FLIGHT);
+        return path -> {
+            long start = System.nanoTime();
+            return upstream.fetch(path).whenComplete((image, error) -> latency.recordSince(start));
+        };
+    }
+
+    /**
+     * Returns the response status for a failed map request.
+     *
+     * @param error the exception that the request completed with.
+     * @return the response status for a failed map request.
+     */
+    private static HttpStatus errorStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        } else if (cause instanceof HttpTimeoutException) {
+            return HttpStatus.GATEWAY_TIMEOUT;
+        } else if (cause instanceof IOException || cause instanceof HttpUpstream.UpstreamException) {
+            return HttpStatus.BAD_GATEWAY;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Return the API path for retrieving the map image. The path excludes the host and the access token so that it
+     * identifies the image independently of the credentials used to fetch it.
      *
      * @param center    the center of the map image.
      * @param width     the width of the window.
      * @param height    the height of the window.
      * @param route     the list of route points (or null).
      * @param locations the list of locations (or null).
-     * @return the URL for retrieving the map image.
-     * @throws MalformedURLException if the URL is invalid.
+     * @return the path for retrieving the map image.
      */
-    private static URL url(Point center, int zoom, int width, int height, List<Point> route, List<Point> locations)
-            throws MalformedURLException, URISyntaxException {
+    private static String path(Point center, int zoom, int width, int height, List<Point> route,
+                               List<Point> locations) {
         StringBuilder overlay = new StringBuilder();
         if (route != null && !route.isEmpty()) {
             overlay.append("path-4+6cb5e6-1(");
@@ -116,21 +901,19 @@ public class MapServer {
             // Replace the trailing comma with a forward slash
             overlay.setCharAt(overlay.length() - 1, '/');
         }
-        return new URI(String.format(
-                "https://api.mapbox.com/"
-                        // {username}/{style_id} and {overlay} (must include trailing slash)
-                        + "styles/v1/%s/%s/static/%s"
+        return String.format(
+                // {username}/{style_id} and {overlay} (must include trailing slash)
+                "styles/v1/%s/%s/static/%s"
                         // {lon},{lat},{zoom}/{width}x{height}{@2x}
                         + "%f,%f,%d/%dx%d%s"
-                        // Access token and optional parameters
-                        + "?access_token=%s&logo=false&attribution=false",
+                        // Optional parameters (the access token is appended by the upstream)
+                        + "?logo=false&attribution=false",
                 "mapbox",
                 "cj7t3i5yj0unt2rmt3y4b5e32",
                 overlay,
                 center.getLon(), center.getLat(), zoom,
-                (int) Math.ceil(width / 2.), (int) Math.ceil(height / 2.), "@2x",
-                System.getenv("TOKEN")
-        )).toURL();
+                (int) Math.ceil(width / 2.), (int) Math.ceil(height / 2.), "@2x"
+        );
     }
 
     /**
@@ -167,4 +950,35 @@ public class MapServer {
         }
         return result.toString();
     }
+
+    /**
+     * Map graph and the tile renderer drawing it, replaced together when the map data is reloaded.
+     */
+    static class MapData {
+        private final MapGraph graph;
+        private final TileRenderer renderer;
+        /**
+         * The boundary distance table of the region, or null if the graph covers the whole map.
+         */
+        private final RegionShard shard;
+
+        MapData(MapGraph graph, TileRenderer renderer, RegionShard shard) {
+            this.graph = graph;
+            this.renderer = renderer;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * A Base64-encoded map image and the trace of its computation, shared by coalesced requests.
+     */
+    private static class MapView {
+        private final byte[] image;
+        private final Trace trace;
+
+        MapView(byte[] image, Trace trace) {
+            this.image = image;
+            this.trace = trace;
+        }
+    }
 }
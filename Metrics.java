@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of counters, gauges, and histograms exposed in the Prometheus text format. Metrics are registered once at
+ * startup; recording a value afterwards only updates atomic counters, so it never locks or allocates.
+ *
+ * @see <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus exposition formats</a>
+ * @see MapServer
+ */
+public class Metrics {
+    /**
+     * Metric families by name in registration order.
+     */
+    private final Map<String, Family> families;
+
+    /**
+     * Constructs an empty registry.
+     */
+    public Metrics() {
+        families = new LinkedHashMap<>();
+    }
+
+    /**
+     * Registers and returns a counter.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param labels the label names and values in alternating order.
+     * @return the registered counter.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        register(name, help, "counter", labels, counter);
+        return counter;
+    }
+
+    /**
+     * Registers a counter whose value is read from the given supplier whenever the registry is scraped.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param value  the supplier of the current total.
+     * @param labels the label names and values in alternating order.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "counter", labels, (Sample) (out, n, l) -> line(out, n, l, value.getAsLong()));
+    }
+
+    /**
+     * Registers a gauge whose value is read from the given supplier whenever the registry is scraped.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param value  the supplier of the current value.
+     * @param labels the label names and values in alternating order.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "gauge", labels, (Sample) (out, n, l) -> line(out, n, l, value.getAsLong()));
+    }
+
+    /**
+     * Registers and returns a histogram of durations recorded in nanoseconds and exposed in seconds.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param labels the label names and values in alternating order.
+     * @return the registered histogram.
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        // Bucket boundaries from about 1 microsecond to about 1 minute.
+        Histogram histogram = new Histogram(1e-9, 10, 36);
+        register(name, help, "histogram", labels, histogram);
+        return histogram;
+    }
+
+    /**
+     * Registers and returns a histogram of non-negative counts.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param labels the label names and values in alternating order.
+     * @return the registered histogram.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        // Bucket boundaries from 1 to about 16 million.
+        Histogram histogram = new Histogram(1, 0, 24);
+        register(name, help, "histogram", labels, histogram);
+        return histogram;
+    }
+
+    /**
+     * Returns all registered metrics in the Prometheus text format.
+     *
+     * @return all registered metrics in the Prometheus text format.
+     */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (int i = 0; i < family.samples.size(); i += 1) {
+                family.samples.get(i).write(out, family.name, family.labels.get(i));
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Adds the metric to the family with the given name, creating the family if needed.
+     *
+     * @param name   the metric name.
+     * @param help   the description of the metric.
+     * @param type   the Prometheus metric type.
+     * @param labels the label names and values in alternating order.
+     * @param sample the metric.
+     * @throws IllegalArgumentException if the labels are unpaired or the family was registered with another type.
+     */
+    private synchronized void register(String name, String help, String type, String[] labels, Sample sample) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name-value pairs: " + List.of(labels));
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        family.labels.add(rendered.toString());
+        family.samples.add(sample);
+    }
+
+    /**
+     * Returns the label value with backslashes, quotes, and newlines escaped.
+     *
+     * @param value the label value.
+     * @return the escaped label value.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Appends one sample line.
+     *
+     * @param out    the output.
+     * @param name   the sample name.
+     * @param labels the rendered labels, possibly empty.
+     * @param value  the sample value.
+     */
+    private static void line(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Metrics sharing one name, description, and type that differ only by labels.
+     */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<String> labels;
+        private final List<Sample> samples;
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            labels = new ArrayList<>();
+            samples = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Writer for the sample lines of one metric.
+     */
+    @FunctionalInterface
+    private interface Sample {
+        /**
+         * Appends the sample lines of this metric.
+         *
+         * @param out    the output.
+         * @param name   the family name.
+         * @param labels the rendered labels, possibly empty.
+         */
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    /**
+     * Monotonically increasing count.
+     */
+    public static class Counter implements Sample {
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Increments the count by one.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Increments the count by the given amount.
+         *
+         * @param amount the non-negative amount to add.
+         */
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        /**
+         * Returns the current count.
+         *
+         * @return the current count.
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            line(out, name, labels, count.sum());
+        }
+    }
+
+    /**
+     * Log-linear histogram in the style of HdrHistogram. Each power-of-two range of values is split into
+     * {@value #SUB_BUCKETS} equal-width buckets, so every recorded value lands in a bucket within 25% of its size.
+     * Buckets include their upper bound, so Prometheus buckets are exposed at the power-of-two boundaries, where the
+     * cumulative counts are exact: each exposed bucket counts the values at most its boundary.
+     */
+    public static class Histogram implements Sample {
+        /**
+         * Number of linear buckets per power of two, as a power of two.
+         */
+        private static final int SUB_BUCKET_BITS = 2;
+        /**
+         * Number of linear buckets per power of two.
+         */
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        /**
+         * Number of buckets covering every non-negative long.
+         */
+        private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+        private final AtomicLongArray buckets;
+        private final AtomicLong sum;
+        private final double scale;
+        private final int minExponent;
+        private final int maxExponent;
+
+        /**
+         * Constructs an empty histogram.
+         *
+         * @param scale       the factor converting recorded values to exposed values.
+         * @param minExponent the power of two of the smallest exposed bucket boundary.
+         * @param maxExponent the power of two of the largest exposed bucket boundary.
+         */
+        Histogram(double scale, int minExponent, int maxExponent) {
+            buckets = new AtomicLongArray(NUM_BUCKETS);
+            sum = new AtomicLong();
+            this.scale = scale;
+            this.minExponent = minExponent;
+            this.maxExponent = maxExponent;
+        }
+
+        /**
+         * Records a value. Negative values are recorded as zero.
+         *
+         * @param value the value to record.
+         */
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(index(value));
+            sum.addAndGet(value);
+        }
+
+        /**
+         * Records the time elapsed since the given {@link System#nanoTime()} reading.
+         *
+         * @param startNanos the {@link System#nanoTime()} reading at the start of the timed operation.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Returns the total number of recorded values.
+         *
+         * @return the total number of recorded values.
+         */
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i += 1) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the bucket index for the given non-negative value. Values up to {@value #SUB_BUCKETS} get a bucket
+         * each; for larger values, one less than the value is bucketed by its highest bit and the next
+         * {@value #SUB_BUCKET_BITS} bits, so that each bucket includes its upper bound rather than its lower bound.
+         *
+         * @param value the non-negative value.
+         * @return the bucket index for the given value.
+         */
+        private static int index(long value) {
+            if (value <= SUB_BUCKETS) {
+                return (int) value;
+            }
+            long below = value - 1;
+            int exponent = 63 - Long.numberOfLeadingZeros(below);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) (below >>> shift) - SUB_BUCKETS;
+            return (shift + 1) * SUB_BUCKETS + subBucket + 1;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            int next = 0;
+            for (int exponent = minExponent; exponent <= maxExponent; exponent += 1) {
+                // Every bucket holding values at most 2^exponent ends with the bucket index(2^exponent).
+                int end = index(1L << exponent);
+                while (next <= end) {
+                    cumulative += buckets.get(next);
+                    next += 1;
+                }
+                line(out, name + "_bucket", prefix + "le=\"" + (double) (1L << exponent) * scale + "\"", cumulative);
+            }
+            while (next < NUM_BUCKETS) {
+                cumulative += buckets.get(next);
+                next += 1;
+            }
+            line(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+            line(out, name + "_sum", labels, sum.get() * scale);
+            line(out, name + "_count", labels, cumulative);
+        }
+    }
+}
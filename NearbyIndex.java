@@ -0,0 +1,275 @@
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * k-nearest-neighbor index over named locations. Each location is stored as a point on the unit sphere in a k-d tree
+ * laid out in arrays. The straight-line (chord) distance between two points on the sphere increases with the
+ * great-circle distance, so ordering by chord distance is exactly the ordering by distance along the Earth's surface.
+ *
+ * @see MapGraph
+ */
+public class NearbyIndex {
+    /**
+     * Unit vector coordinates of each location, in k-d tree order: the location at the middle of any subtree range is
+     * the root of that subtree, split on the axis recorded for it.
+     */
+    private final double[][] coordinates;
+    private final byte[] axes;
+    private final String[] names;
+    private final Point[] locations;
+
+    /**
+     * Constructs an index over the given named locations.
+     *
+     * @param locations the locations of each place name.
+     */
+    public NearbyIndex(Map<String, List<Point>> locations) {
+        int size = 0;
+        for (List<Point> points : locations.values()) {
+            size += points.size();
+        }
+        coordinates = new double[3][size];
+        axes = new byte[size];
+        names = new String[size];
+        this.locations = new Point[size];
+        int i = 0;
+        for (Map.Entry<String, List<Point>> entry : locations.entrySet()) {
+            for (Point location : entry.getValue()) {
+                double[] unit = unitVector(location);
+                for (int axis = 0; axis < 3; axis += 1) {
+                    coordinates[axis][i] = unit[axis];
+                }
+                names[i] = entry.getKey();
+                this.locations[i] = location;
+                i += 1;
+            }
+        }
+        build(0, size);
+    }
+
+    /**
+     * Returns up to the given number of named locations closest to the target, closest first.
+     *
+     * @param target the target location.
+     * @param k      the maximum number of locations to return.
+     * @return up to the given number of named locations closest to the target, closest first.
+     */
+    public List<Neighbor> nearest(Point target, int k) {
+        Search search = new Search(unitVector(target), Math.min(k, names.length));
+        if (search.indexes.length > 0) {
+            search.visit(0, names.length);
+        }
+        List<Neighbor> result = new ArrayList<>(search.size);
+        for (int j = 0; j < search.size; j += 1) {
+            int i = search.indexes[j];
+            // Convert the chord length to the angle it subtends and then to a distance along the surface.
+            double angle = 2 * Math.asin(Math.min(1, Math.sqrt(search.distances[j]) / 2));
+            result.add(new Neighbor(names[i], locations[i],
+                    angle * DistanceUtils.EARTH_MEAN_RADIUS_KM * 1000));
+        }
+        return result;
+    }
+
+    /**
+     * Arranges the locations in the given range into a k-d tree, splitting each range at its median on the axis with
+     * the widest spread.
+     *
+     * @param low  the first index of the range, inclusive.
+     * @param high the last index of the range, exclusive.
+     */
+    private void build(int low, int high) {
+        if (high - low < 2) {
+            return;
+        }
+        int axis = 0;
+        double widest = -1;
+        for (int a = 0; a < 3; a += 1) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = low; i < high; i += 1) {
+                min = Math.min(min, coordinates[a][i]);
+                max = Math.max(max, coordinates[a][i]);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                axis = a;
+            }
+        }
+        int mid = (low + high) >>> 1;
+        select(axis, low, high, mid);
+        axes[mid] = (byte) axis;
+        build(low, mid);
+        build(mid + 1, high);
+    }
+
+    /**
+     * Partially sorts the given range on the given axis so that the location at index {@code n} is the one that would
+     * be there if the range were sorted, with no larger values before it and no smaller values after it.
+     *
+     * @param axis the axis to compare.
+     * @param low  the first index of the range, inclusive.
+     * @param high the last index of the range, exclusive.
+     * @param n    the index to select.
+     */
+    private void select(int axis, int low, int high, int n) {
+        double[] values = coordinates[axis];
+        int left = low;
+        int right = high - 1;
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i += 1;
+                }
+                while (values[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (n <= j) {
+                right = j;
+            } else if (n >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swaps the locations at the given indexes.
+     *
+     * @param i the first index.
+     * @param j the second index.
+     */
+    private void swap(int i, int j) {
+        for (double[] values : coordinates) {
+            double value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        String name = names[i];
+        names[i] = names[j];
+        names[j] = name;
+        Point location = locations[i];
+        locations[i] = locations[j];
+        locations[j] = location;
+    }
+
+    /**
+     * Returns the unit vector for the given location.
+     *
+     * @param location the location.
+     * @return the unit vector for the given location.
+     */
+    private static double[] unitVector(Point location) {
+        double lat = Math.toRadians(location.getLat());
+        double lon = Math.toRadians(location.getLon());
+        return new double[]{Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+    }
+
+    /**
+     * A named location and its distance from the target of a query.
+     */
+    public static class Neighbor {
+        public final String name;
+        public final double lat;
+        public final double lon;
+        /**
+         * Distance from the target in meters.
+         */
+        public final double distance;
+
+        Neighbor(String name, Point location, double distance) {
+            this.name = name;
+            this.lat = location.getLat();
+            this.lon = location.getLon();
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * State of one k-nearest-neighbor query: the best locations found so far, sorted by squared chord distance.
+     */
+    private class Search {
+        private final double[] target;
+        private final int[] indexes;
+        private final double[] distances;
+        private int size;
+
+        Search(double[] target, int k) {
+            this.target = target;
+            indexes = new int[Math.max(0, k)];
+            distances = new double[Math.max(0, k)];
+        }
+
+        /**
+         * Visits the subtree stored in the given range, skipping any half that cannot contain a closer location.
+         *
+         * @param low  the first index of the range, inclusive.
+         * @param high the last index of the range, exclusive.
+         */
+        void visit(int low, int high) {
+            if (low >= high) {
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            double squared = 0;
+            for (int axis = 0; axis < 3; axis += 1) {
+                double d = coordinates[axis][mid] - target[axis];
+                squared += d * d;
+            }
+            offer(mid, squared);
+            if (high - low == 1) {
+                return;
+            }
+            int axis = axes[mid];
+            double split = target[axis] - coordinates[axis][mid];
+            if (split < 0) {
+                visit(low, mid);
+                if (size < indexes.length || split * split < distances[size - 1]) {
+                    visit(mid + 1, high);
+                }
+            } else {
+                visit(mid + 1, high);
+                if (size < indexes.length || split * split < distances[size - 1]) {
+                    visit(low, mid);
+                }
+            }
+        }
+
+        /**
+         * Inserts the location into the best locations if it is closer than the farthest of them.
+         *
+         * @param i       the index of the location.
+         * @param squared the squared chord distance of the location from the target.
+         */
+        private void offer(int i, double squared) {
+            if (size == indexes.length) {
+                if (squared >= distances[size - 1]) {
+                    return;
+                }
+                size -= 1;
+            }
+            int j = size;
+            while (j > 0 && distances[j - 1] > squared) {
+                indexes[j] = indexes[j - 1];
+                distances[j] = distances[j - 1];
+                j -= 1;
+            }
+            indexes[j] = i;
+            distances[j] = squared;
+            size += 1;
+        }
+    }
+}
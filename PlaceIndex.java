@@ -0,0 +1,356 @@
+import autocomplete.WeightedTernarySearchTreeAutocomplete;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Point;
+
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Prefix search over place names ranked by importance. An index can be built from the place-importance data alone,
+ * which is much faster than parsing the OSM data, so {@link MapServer} answers searches while the {@link MapGraph}
+ * is still loading.
+ *
+ * <p>Searches ignore case, diacritics, and punctuation. Each name is indexed under its folded key (see
+ * {@link #fold(CharSequence)}), which maps back to the names that fold to it, so a query is folded once and then
+ * matched against the keys exactly.
+ *
+ * <p>An index built with the locations of the places can also rank matches near a given point higher. The locations
+ * are bucketed in a grid so that only the cells around the point are examined.
+ *
+ * @see MapGraph
+ */
+public class PlaceIndex {
+    /**
+     * Searches with fewer exact matches than this are completed with approximate matches.
+     */
+    public static final int MIN_EXACT_MATCHES = 3;
+    /**
+     * Side length in degrees of the square cells in the location grid.
+     */
+    private static final double CELL_DEGREES = 0.01;
+    /**
+     * Distance in kilometers within which matches are ranked higher the closer they are.
+     */
+    private static final double PROXIMITY_RADIUS_KM = 1.5;
+    /**
+     * Score penalty per kilometer of distance, in units of the natural logarithm of importance.
+     */
+    private static final double DISTANCE_WEIGHT = 2.0;
+    /**
+     * Folded keys weighted by the importance of their most important name, so that the top matches are found without
+     * ranking every match.
+     */
+    private final WeightedTernarySearchTreeAutocomplete autocomplete;
+    /**
+     * Place names by folded key, in order of importance.
+     */
+    private final Map<String, List<CharSequence>> names;
+    private final Map<CharSequence, Integer> importance;
+    private final SpatialContext context;
+    /**
+     * Named locations by grid cell, or empty if the index was built without locations.
+     */
+    private final Map<Long, List<Place>> grid;
+
+    /**
+     * Constructs an index over the given place names.
+     *
+     * @param names      the place names.
+     * @param importance the importance of each place name; names without an importance rank last.
+     */
+    public PlaceIndex(Collection<? extends CharSequence> names, Map<CharSequence, Integer> importance) {
+        this(names, importance, Map.of(), null);
+    }
+
+    /**
+     * Constructs an index over the names of the given locations that can rank matches by proximity.
+     *
+     * @param locations  the locations of each place name.
+     * @param importance the importance of each place name; names without an importance rank last.
+     * @param context    the context for computing distances.
+     */
+    public PlaceIndex(Map<String, List<Point>> locations, Map<CharSequence, Integer> importance,
+                      SpatialContext context) {
+        this(locations.keySet(), importance, locations, context);
+    }
+
+    private PlaceIndex(Collection<? extends CharSequence> names, Map<CharSequence, Integer> importance,
+                       Map<String, List<Point>> locations, SpatialContext context) {
+        this.importance = importance;
+        this.context = context;
+        Comparator<CharSequence> byImportance = Comparator.comparingInt(this::importance);
+        this.names = new HashMap<>();
+        for (CharSequence name : names) {
+            String key = fold(name).strip();
+            if (!key.isEmpty()) {
+                this.names.computeIfAbsent(key, k -> new ArrayList<>(1)).add(name);
+            }
+        }
+        autocomplete = new WeightedTernarySearchTreeAutocomplete();
+        for (Map.Entry<String, List<CharSequence>> entry : this.names.entrySet()) {
+            List<CharSequence> folded = entry.getValue();
+            folded.sort(byImportance);
+            autocomplete.add(entry.getKey(), importance(folded.get(0)));
+        }
+        grid = new HashMap<>();
+        for (Map.Entry<String, List<Point>> entry : locations.entrySet()) {
+            String key = fold(entry.getKey()).strip();
+            for (Point location : entry.getValue()) {
+                grid.computeIfAbsent(cellKey(column(location.getLon()), column(location.getLat())),
+                        k -> new ArrayList<>()).add(new Place(key, entry.getKey(), location));
+            }
+        }
+    }
+
+    /**
+     * Returns an index over every place name in the place-importance TSV.
+     *
+     * @param placesPath the path to a TSV file representing places and importance.
+     * @return an index over every place name in the place-importance TSV.
+     */
+    public static PlaceIndex load(String placesPath) {
+        Map<CharSequence, Integer> importance = importance(placesPath);
+        return new PlaceIndex(importance.keySet(), importance);
+    }
+
+    /**
+     * Returns the importance of each place name in the place-importance TSV.
+     *
+     * @param placesPath the path to a TSV file representing places and importance.
+     * @return the importance of each place name in the place-importance TSV.
+     */
+    public static Map<CharSequence, Integer> importance(String placesPath) {
+        Map<CharSequence, Integer> importance = new HashMap<>();
+        try (Scanner input = new Scanner(fileStream(placesPath))) {
+            while (input.hasNextLine()) {
+                Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
+                importance.put(line.next(), line.nextInt());
+            }
+        }
+        return importance;
+    }
+
+    /**
+     * Return the names of the places that prefix-match the query string in order of importance, reporting the total
+     * number of matches. The cost depends on the number of names returned rather than the number of matches. If
+     * fewer than {@value #MIN_EXACT_MATCHES} names match, the result is completed with names that begin with
+     * a misspelling of the query, fewest edits first, so that a typo does not leave the user without suggestions.
+     * Names with the same folded key are returned together.
+     *
+     * @param prefix     prefix string that could be any case with or without punctuation.
+     * @param maxMatches the maximum number of names to return.
+     * @param matchCount receives the number of folded keys matching the prefix.
+     * @return a list of full names of places matching the prefix.
+     */
+    public List<CharSequence> getLocationsByPrefix(String prefix, int maxMatches, LongConsumer matchCount) {
+        return getLocationsByPrefix(prefix, maxMatches, null, matchCount);
+    }
+
+    /**
+     * Return the names of the places that prefix-match the query string, ranking places near the given point higher
+     * if this index was built with locations. Matches are ranked by the logarithm of their importance plus a penalty
+     * proportional to the distance to their closest location, up to {@value #PROXIMITY_RADIUS_KM} km. Candidates are
+     * the most important matches and the matches with a location in the grid cells around the point.
+     *
+     * @param prefix     prefix string that could be any case with or without punctuation.
+     * @param maxMatches the maximum number of names to return.
+     * @param near       the point to rank nearby places higher, or null to rank by importance alone.
+     * @param matchCount receives the number of folded keys matching the prefix.
+     * @return a list of full names of places matching the prefix.
+     * @see #getLocationsByPrefix(String, int, LongConsumer)
+     */
+    public List<CharSequence> getLocationsByPrefix(String prefix, int maxMatches, Point near,
+                                                   LongConsumer matchCount) {
+        String key = fold(prefix);
+        matchCount.accept(autocomplete.countMatches(key));
+        List<CharSequence> matches = rankByProximity(key, expand(autocomplete.topMatches(key, maxMatches), maxMatches),
+                near, maxMatches);
+        int maxEdits = maxEdits(key.length());
+        if (matches.size() < Math.min(MIN_EXACT_MATCHES, maxMatches) && maxEdits > 0) {
+            matches = expand(autocomplete.fuzzyMatches(key, maxEdits, maxMatches), maxMatches);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the most important matches merged with the matches located near the given point, ranked by importance
+     * and distance, or the given matches unchanged if the point is null or this index was built without locations.
+     * Only the grid cells around the point are examined, so callers can cache the most important matches of a query
+     * regardless of location and rank them for each point on the way out.
+     *
+     * @param key        the folded query.
+     * @param matches    the most important names matching the query.
+     * @param near       the point to rank nearby places higher, or null.
+     * @param maxMatches the maximum number of names to return.
+     * @return the names ranked by importance and distance.
+     */
+    public List<CharSequence> rankByProximity(String key, List<CharSequence> matches, Point near, int maxMatches) {
+        if (near == null || grid.isEmpty()) {
+            return matches;
+        }
+        double latRadius = PROXIMITY_RADIUS_KM * DistanceUtils.KM_TO_DEG;
+        double lonRadius = latRadius / Math.max(0.01, Math.cos(Math.toRadians(near.getLat())));
+        Map<CharSequence, Double> distances = new HashMap<>();
+        for (long x = column(near.getLon() - lonRadius); x <= column(near.getLon() + lonRadius); x += 1) {
+            for (long y = column(near.getLat() - latRadius); y <= column(near.getLat() + latRadius); y += 1) {
+                for (Place place : grid.getOrDefault(cellKey(x, y), List.of())) {
+                    if (place.key.startsWith(key)) {
+                        double distance = context.calcDistance(place.location, near) * DistanceUtils.DEG_TO_KM;
+                        distances.merge(place.name, distance, Math::min);
+                    }
+                }
+            }
+        }
+        Set<CharSequence> candidates = new LinkedHashSet<>(matches);
+        candidates.addAll(distances.keySet());
+        Map<CharSequence, Double> scores = new HashMap<>(candidates.size());
+        for (CharSequence name : candidates) {
+            double distance = Math.min(distances.getOrDefault(name, PROXIMITY_RADIUS_KM), PROXIMITY_RADIUS_KM);
+            scores.put(name, Math.log1p(importance(name)) + DISTANCE_WEIGHT * distance);
+        }
+        List<CharSequence> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.comparingDouble(scores::get));
+        return new ArrayList<>(ranked.subList(0, Math.min(maxMatches, ranked.size())));
+    }
+
+    /**
+     * Returns the importance of the given place name, or the largest value if it has none.
+     *
+     * @param name the place name.
+     * @return the importance of the given place name.
+     */
+    private int importance(CharSequence name) {
+        return importance.getOrDefault(name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the index of the location grid column or row containing the given longitude or latitude.
+     *
+     * @param degrees the longitude or latitude.
+     * @return the index of the grid column or row.
+     */
+    private static long column(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    /**
+     * Returns the key of the location grid cell at the given column and row.
+     *
+     * @param x the column index.
+     * @param y the row index.
+     * @return the key of the grid cell.
+     */
+    private static long cellKey(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    /**
+     * Returns the names for the given folded keys in order, up to the given number of names.
+     *
+     * @param keys       the folded keys.
+     * @param maxMatches the maximum number of names to return.
+     * @return the names for the given folded keys in order.
+     */
+    private List<CharSequence> expand(List<CharSequence> keys, int maxMatches) {
+        List<CharSequence> matches = new ArrayList<>(keys.size());
+        for (CharSequence key : keys) {
+            for (CharSequence name : names.get(key.toString())) {
+                if (matches.size() < maxMatches) {
+                    matches.add(name);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the search key for the given text: lower case, without diacritics, quotes, apostrophes, or periods,
+     * with any other punctuation treated as a space, and with runs of spaces collapsed to one. Leading spaces are
+     * removed, but a trailing space is kept so that a query ending in a space only matches whole words.
+     *
+     * @param text the name or query.
+     * @return the search key for the given text.
+     */
+    public static String fold(CharSequence text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i += 1) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                key.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK || isElided(c)) {
+                // Drop diacritics and punctuation within words.
+                continue;
+            } else if (!key.isEmpty() && key.charAt(key.length() - 1) != ' ') {
+                key.append(' ');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns true if the character is removed from search keys rather than treated as a word separator.
+     *
+     * @param c the character.
+     * @return true if the character is removed from search keys.
+     */
+    private static boolean isElided(char c) {
+        return switch (c) {
+            case '\'', '\u2018', '\u2019', '\u02bc', '"', '\u201c', '\u201d', '.' -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns the number of edits tolerated in a query of the given length. Short queries are matched exactly
+     * because a single edit already matches a large part of the vocabulary.
+     *
+     * @param length the length of the query.
+     * @return the number of edits tolerated in a query of the given length.
+     */
+    private static int maxEdits(int length) {
+        if (length < 4) {
+            return 0;
+        } else if (length < 8) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Returns the folded key of every place name in the index, found lazily as the result is iterated.
+     *
+     * @return the folded key of every place name in the index.
+     */
+    public Iterable<CharSequence> keys() {
+        return () -> autocomplete.iterator("");
+    }
+
+    /**
+     * Returns an input stream from the contents of the file at the given path.
+     *
+     * @param path a file path.
+     * @return an input stream with the contents of the specified file.
+     */
+    private static InputStream fileStream(String path) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+    }
+
+    /**
+     * A location of a place name in the location grid.
+     */
+    private static class Place {
+        private final String key;
+        private final CharSequence name;
+        private final Point location;
+
+        Place(String key, CharSequence name, Point location) {
+            this.key = key;
+            this.name = name;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import graphs.shortestpaths.DijkstraSolver;
+import org.locationtech.spatial4j.shape.Point;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * One region of a map that is split across several server processes, each holding the {@link MapGraph} of its own
+ * region. A shard precomputes the shortest distance within its graph between every pair of its boundary vertices (see
+ * {@link MapGraph#boundary()}), so that a {@link ShardCoordinator} can find routes between regions by searching only
+ * the boundary vertices of every shard and then asking each shard for the streets along its part of the route.
+ * Distances are the sums of edge weights in degrees, and unreachable vertices are at distance -1 so that distances
+ * can be sent as JSON.
+ *
+ * @see ShardCoordinator
+ * @see MapServer
+ */
+public class RegionShard {
+    private final MapGraph graph;
+    /**
+     * Distances between boundary vertices, indexed in the order of {@link MapGraph#boundary()}.
+     */
+    private final double[][] table;
+
+    /**
+     * Constructs a shard for the given regional graph, computing the boundary distance table with one single-source
+     * search per boundary vertex, run in parallel.
+     *
+     * @param graph the graph of the region.
+     */
+    public RegionShard(MapGraph graph) {
+        this.graph = graph;
+        List<Point> boundary = graph.boundary();
+        table = new double[boundary.size()][];
+        IntStream.range(0, boundary.size()).parallel().forEach(i -> table[i] = distances(boundary.get(i)));
+    }
+
+    /**
+     * Returns the graph of the region.
+     *
+     * @return the graph of the region.
+     */
+    public MapGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the distances between boundary vertices. The returned arrays must not be modified.
+     *
+     * @return the distances between boundary vertices, indexed in the order of {@link MapGraph#boundary()}.
+     */
+    public double[][] table() {
+        return table;
+    }
+
+    /**
+     * Returns the distance from the given vertex to each boundary vertex.
+     *
+     * @param from a vertex of the graph.
+     * @return the distance from the given vertex to each boundary vertex, in the order of
+     * {@link MapGraph#boundary()}.
+     */
+    public double[] distances(Point from) {
+        return distances(from, graph.boundary());
+    }
+
+    /**
+     * Returns the distance from the given vertex to each of the given vertices.
+     *
+     * @param from    a vertex of the graph.
+     * @param targets vertices of the graph.
+     * @return the distance from the given vertex to each of the given vertices, in the same order.
+     */
+    public double[] distances(Point from, List<Point> targets) {
+        // Streets are two-way, so the distances from a vertex equal the distances to it.
+        DijkstraSolver<Point> solver = new DijkstraSolver<>(graph, from);
+        double[] result = new double[targets.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            double distance = solver.distTo(targets.get(i));
+            result[i] = distance == Double.POSITIVE_INFINITY ? -1 : distance;
+        }
+        return result;
+    }
+}
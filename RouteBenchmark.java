@@ -0,0 +1,93 @@
+import graphs.Edge;
+import graphs.shortestpaths.AStarSolver;
+import graphs.shortestpaths.ParallelAStarSolver;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare {@link AStarSolver} and {@link ParallelAStarSolver} on long routes across the Seattle {@link MapGraph}.
+ */
+public class RouteBenchmark {
+    /**
+     * The OpenStreetMap XML file path.
+     */
+    private static final String OSM_DB_PATH = "seattle.osm.gz";
+    /**
+     * The place-importance TSV data file path from OpenStreetMap.
+     */
+    private static final String PLACES_PATH = "places.tsv";
+    /**
+     * Number of start-goal pairs to route per solver.
+     */
+    private static final int NUM_ROUTES = 20;
+    /**
+     * Number of untimed routes used to warm up the JIT before measuring.
+     */
+    private static final int NUM_WARMUP = 5;
+
+    public static void main(String[] args) throws Exception {
+        SpatialContext context = SpatialContext.GEO;
+        ShapeFactory factory = context.getShapeFactory();
+        MapGraph map = new MapGraph(OSM_DB_PATH, PLACES_PATH, context);
+
+        // Pair up random points at opposite ends of the map so that every route crosses the region.
+        Random random = new Random(373);
+        List<Point[]> routes = new ArrayList<>(NUM_WARMUP + NUM_ROUTES);
+        for (int i = 0; i < NUM_WARMUP + NUM_ROUTES; i += 1) {
+            Point start = factory.pointLatLon(47.50 + 0.05 * random.nextDouble(), -122.40 + 0.10 * random.nextDouble());
+            Point goal = factory.pointLatLon(47.70 + 0.05 * random.nextDouble(), -122.35 + 0.10 * random.nextDouble());
+            routes.add(new Point[]{map.closest(start), map.closest(goal)});
+        }
+
+        int parallelism = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        System.out.println("route,sequentialNanos,parallelNanos,sequentialSettled,parallelSettled");
+        for (int i = 0; i < routes.size(); i += 1) {
+            Point start = routes.get(i)[0];
+            Point goal = routes.get(i)[1];
+
+            long sequentialStart = System.nanoTime();
+            AStarSolver<Point> sequential = new AStarSolver<>(map, start, goal);
+            List<Point> expected = sequential.solution();
+            long sequentialTime = System.nanoTime() - sequentialStart;
+
+            long parallelStart = System.nanoTime();
+            ParallelAStarSolver<Point> parallel = new ParallelAStarSolver<>(map, start, goal, parallelism);
+            List<Point> actual = parallel.solution();
+            long parallelTime = System.nanoTime() - parallelStart;
+
+            if (Math.abs(length(map, expected) - length(map, actual)) > 1e-9) {
+                throw new AssertionError("Route " + i + " lengths differ: " + expected + " vs " + actual);
+            }
+            if (i >= NUM_WARMUP) {
+                System.out.println((i - NUM_WARMUP) + "," + sequentialTime + "," + parallelTime + ","
+                        + sequential.settled() + "," + parallel.settled());
+            }
+        }
+    }
+
+    /**
+     * Returns the total edge weight along the given path.
+     *
+     * @param map  the graph containing the path.
+     * @param path the list of vertices along the path.
+     * @return the total edge weight along the given path.
+     */
+    private static double length(MapGraph map, List<Point> path) {
+        double result = 0.0;
+        for (int i = 1; i < path.size(); i += 1) {
+            double weight = Double.POSITIVE_INFINITY;
+            for (Edge<Point> e : map.neighbors(path.get(i - 1))) {
+                if (e.to.equals(path.get(i))) {
+                    weight = Math.min(weight, e.weight);
+                }
+            }
+            result += weight;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,383 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.locationtech.spatial4j.shape.Point;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded cache of ranked search results by prefix. Search-as-you-type clients send a sequence of prefixes that each
+ * extend the previous one, so a prefix that misses the cache is narrowed from the cached result of a shorter prefix
+ * when that result is complete: if every match of the shorter prefix fit in its result, then the matches of the
+ * longer prefix are exactly the names in that result that start with the longer prefix, already in rank order.
+ * Narrowing is skipped when it leaves so few names that the index would add approximate matches. Prefixes are cached
+ * by their folded key (see {@link PlaceIndex#fold(CharSequence)}), so queries differing only in case or punctuation
+ * share a result. Results are cached by prefix alone, ranked by importance, and searches near a point rank the
+ * cached result by proximity on the way out (see {@link PlaceIndex#rankByProximity}), so that every location shares
+ * the prewarmed and narrowed results. Each result is serialized to JSON at most once, the first time it is returned,
+ * and keeps the UTF-8 bytes and an entity tag so that responses write the bytes directly.
+ *
+ * <p>Lookups do not lock: results are kept in a concurrent map, and each hit only records when the result was last
+ * used. Eviction is approximately least-recently-used. Once the cache holds more than its entry limit, one thread at
+ * a time removes the least recently used results in a batch, leaving room for an eighth of the limit before the next
+ * batch. Results used while a batch is chosen may be evicted anyway, which only costs a recomputation.
+ *
+ * @see PlaceIndex
+ * @see MapServer
+ */
+public class SearchCache {
+    private static final JsonFactory JSON = new JsonFactory();
+    private final PlaceIndex index;
+    private final int maxMatches;
+    private final int maxEntries;
+    /**
+     * Results by prefix with the time each was last used.
+     */
+    private final ConcurrentHashMap<String, Entry> cache;
+    /**
+     * True while a thread is evicting results.
+     */
+    private final AtomicBoolean evicting;
+    private final LongAdder hits;
+    private final LongAdder narrowed;
+    private final LongAdder misses;
+
+    /**
+     * Constructs an empty cache for the given index.
+     *
+     * @param index      the index answering searches that cannot be served from the cache.
+     * @param maxMatches the maximum number of names in each result.
+     * @param maxEntries the maximum number of cached prefixes.
+     */
+    public SearchCache(PlaceIndex index, int maxMatches, int maxEntries) {
+        this.index = index;
+        this.maxMatches = maxMatches;
+        this.maxEntries = maxEntries;
+        cache = new ConcurrentHashMap<>();
+        evicting = new AtomicBoolean();
+        hits = new LongAdder();
+        narrowed = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Caches the results for every prefix of a place name up to the given length, shortest first so that longer
+     * prefixes are narrowed from shorter ones where possible. Prewarming does not count towards the hit ratio.
+     *
+     * @param maxLength the length of the longest prefixes to cache.
+     */
+    public void prewarm(int maxLength) {
+        Set<String> prefixes = new TreeSet<>(Comparator.comparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder()));
+        for (CharSequence key : index.keys()) {
+            for (int length = 1; length <= Math.min(maxLength, key.length()); length += 1) {
+                prefixes.add(key.subSequence(0, length).toString());
+            }
+        }
+        for (String prefix : prefixes) {
+            Result result = narrow(prefix);
+            put(prefix, result != null ? result : compute(prefix));
+        }
+    }
+
+    /**
+     * Returns the names of the places that prefix-match the query string in order of importance, ranking places near
+     * the given point higher, and reports the total number of matches.
+     *
+     * @param prefix     the prefix string.
+     * @param near       the point to rank nearby places higher, or null to rank by importance alone.
+     * @param matchCount receives the number of folded keys matching the prefix.
+     * @return the full names of places matching the prefix.
+     * @see PlaceIndex#getLocationsByPrefix(String, int, Point, LongConsumer)
+     */
+    public Result search(String prefix, Point near, LongConsumer matchCount) {
+        String key = PlaceIndex.fold(prefix);
+        Result result = get(key);
+        if (result != null) {
+            hits.increment();
+        } else {
+            result = narrow(key);
+            if (result != null) {
+                narrowed.increment();
+            } else {
+                result = compute(key);
+                misses.increment();
+            }
+            put(key, result);
+        }
+        matchCount.accept(result.count);
+        if (result.exact) {
+            // Approximate matches are only added when too few names match, whatever the location, and are ranked by
+            // edit distance alone.
+            List<CharSequence> ranked = index.rankByProximity(key, result.names, near, maxMatches);
+            if (!ranked.equals(result.names)) {
+                // Ranked results differ by location, so they are not cached and are serialized for each search.
+                result = new Result(List.copyOf(ranked), result.count, true, false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of searches answered directly from the cache.
+     *
+     * @return the number of searches answered directly from the cache.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of searches answered by narrowing the cached result of a shorter prefix.
+     *
+     * @return the number of searches answered by narrowing the cached result of a shorter prefix.
+     */
+    public long narrowed() {
+        return narrowed.sum();
+    }
+
+    /**
+     * Returns the number of searches answered by the index.
+     *
+     * @return the number of searches answered by the index.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of cached prefixes.
+     *
+     * @return the number of cached prefixes.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the result for the given folded prefix derived from the complete cached result of its longest cached
+     * proper prefix, or null if there is no such result.
+     *
+     * @param prefix the folded prefix string.
+     * @return the result for the given prefix, or null if it cannot be derived from the cache.
+     */
+    private Result narrow(String prefix) {
+        for (int length = prefix.length() - 1; length > 0; length -= 1) {
+            Result parent = get(prefix.substring(0, length));
+            if (parent != null) {
+                if (!parent.complete) {
+                    // Any shorter prefix has at least as many matches, so it cannot be complete either.
+                    return null;
+                }
+                List<CharSequence> names = new ArrayList<>(parent.names.size());
+                Set<String> keys = new HashSet<>();
+                for (CharSequence name : parent.names) {
+                    String key = PlaceIndex.fold(name).strip();
+                    if (key.startsWith(prefix)) {
+                        names.add(name);
+                        keys.add(key);
+                    }
+                }
+                if (names.size() < Math.min(PlaceIndex.MIN_EXACT_MATCHES, maxMatches)) {
+                    return null;
+                }
+                return new Result(List.copyOf(names), keys.size(), true, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the result for the given folded prefix from the index.
+     *
+     * @param prefix the folded prefix string.
+     * @return the result for the given prefix from the index.
+     */
+    private Result compute(String prefix) {
+        long[] count = new long[1];
+        List<CharSequence> names = index.getLocationsByPrefix(prefix, maxMatches, c -> count[0] = c);
+        // A result that is not full and contains no approximate matches holds every name matching the prefix.
+        boolean exact = true;
+        for (CharSequence name : names) {
+            exact &= PlaceIndex.fold(name).strip().startsWith(prefix);
+        }
+        return new Result(List.copyOf(names), count[0], exact, exact && names.size() < maxMatches);
+    }
+
+    /**
+     * Returns the cached result for the given prefix, recording that it was used, or null if it is not cached.
+     *
+     * @param prefix the folded prefix string.
+     * @return the cached result for the given prefix, or null.
+     */
+    private Result get(String prefix) {
+        Entry entry = cache.get(prefix);
+        if (entry == null) {
+            return null;
+        }
+        entry.used = System.nanoTime();
+        return entry.result;
+    }
+
+    /**
+     * Adds the result to the cache, evicting the least recently used prefixes if it holds more than the entry limit
+     * and no other thread is already evicting.
+     *
+     * @param prefix the folded prefix string.
+     * @param result the result for the prefix.
+     */
+    private void put(String prefix, Result result) {
+        cache.put(prefix, new Entry(result, System.nanoTime()));
+        if (cache.size() > maxEntries && evicting.compareAndSet(false, true)) {
+            try {
+                evict(cache.size() - (maxEntries - maxEntries / 8));
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Removes about the given number of least recently used prefixes: every prefix last used no later than the
+     * prefix at that position in order of use. Entries replaced or used since the order was taken are kept.
+     *
+     * @param count the number of prefixes to remove.
+     */
+    private void evict(int count) {
+        if (count <= 0) {
+            return;
+        }
+        long[] used = new long[cache.size()];
+        int size = 0;
+        for (Entry entry : cache.values()) {
+            if (size == used.length) {
+                used = Arrays.copyOf(used, size * 2 + 1);
+            }
+            used[size] = entry.used;
+            size += 1;
+        }
+        if (size == 0) {
+            return;
+        }
+        Arrays.sort(used, 0, size);
+        long cutoff = used[Math.min(count, size) - 1];
+        cache.values().removeIf(entry -> entry.used <= cutoff);
+    }
+
+    /**
+     * Cached result with the time it was last used.
+     */
+    private static class Entry {
+        private final Result result;
+        /**
+         * The {@link System#nanoTime()} of the last use, written without synchronization since an occasionally lost
+         * update only makes eviction slightly less accurate.
+         */
+        private volatile long used;
+
+        Entry(Result result, long used) {
+            this.result = result;
+            this.used = used;
+        }
+    }
+
+    /**
+     * Ranked names matching a prefix and the total number of matching folded keys.
+     */
+    public static class Result {
+        private final List<CharSequence> names;
+        private final long count;
+        /**
+         * True if every name matches the prefix, without approximate matches.
+         */
+        private final boolean exact;
+        /**
+         * True if the names are exactly the names matching the prefix, without approximate matches.
+         */
+        private final boolean complete;
+        /**
+         * The names as a UTF-8 JSON array, or null until first requested.
+         */
+        private volatile byte[] json;
+        private volatile String etag;
+
+        Result(List<CharSequence> names, long count, boolean exact, boolean complete) {
+            this.names = names;
+            this.count = count;
+            this.exact = exact;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns the full names of places matching the prefix in rank order.
+         *
+         * @return an unmodifiable list of full names of places matching the prefix.
+         */
+        public List<CharSequence> names() {
+            return names;
+        }
+
+        /**
+         * Returns the names as a UTF-8 JSON array of strings. The returned array must not be modified.
+         *
+         * @return the names as a UTF-8 JSON array of strings.
+         */
+        public byte[] json() {
+            byte[] result = json;
+            if (result == null) {
+                // Concurrent callers may each serialize the names, but they produce identical bytes.
+                result = serialize(names);
+                etag = '"' + DigestUtils.sha256Hex(result).substring(0, 32) + '"';
+                json = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the quoted entity tag identifying the JSON bytes, which differs whenever the names differ.
+         *
+         * @return the quoted entity tag identifying the JSON bytes.
+         */
+        public String etag() {
+            if (etag == null) {
+                json();
+            }
+            return etag;
+        }
+    }
+
+    /**
+     * Returns the given names as a UTF-8 JSON array of strings, written by a streaming generator into a buffer sized
+     * for the names. Each result is serialized at most once, so a per-thread buffer would save little and would pin
+     * memory to every thread, including each virtual thread.
+     *
+     * @param names the names to serialize.
+     * @return the given names as a UTF-8 JSON array of strings.
+     */
+    private static byte[] serialize(List<CharSequence> names) {
+        // Two bytes for the brackets, and per name its characters, quotes, and comma, assuming mostly ASCII.
+        int size = 2;
+        for (CharSequence name : names) {
+            size += name.length() + 3;
+        }
+        ByteArrayBuilder buffer = new ByteArrayBuilder(size);
+        try (JsonGenerator generator = JSON.createGenerator(buffer)) {
+            generator.writeStartArray();
+            for (CharSequence name : names) {
+                generator.writeString(name.toString());
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            // The buffer is in memory, so writing to it cannot fail.
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
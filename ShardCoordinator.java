@@ -0,0 +1,588 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphs.Edge;
+import graphs.shortestpaths.DijkstraSolver;
+import io.javalin.Javalin;
+import io.javalin.http.HttpStatus;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Routes across a map split into regions, each served by a separate {@link MapServer} process (a shard) that holds
+ * only the graph of its own region. Every route between regions passes through the boundary vertices of the shards
+ * (see {@link MapGraph#boundary()}), so the coordinator keeps an overlay graph of the boundary vertices of every shard
+ * weighted by the distance tables the shards precompute (see {@link RegionShard}). A route is found by asking the
+ * shards of the start and the goal for their distances to their boundary vertices, searching the overlay, and then
+ * asking each shard along the way for the streets of its part of the route.
+ *
+ * <p>Shards report the version of their map data with every response. A route computed with responses from a
+ * version other than the one the overlay was built from is discarded: the coordinator fetches the boundary of every
+ * shard again, rebuilds the overlay, and routes again.
+ *
+ * @see RegionShard
+ * @see ShardLauncher
+ */
+public class ShardCoordinator {
+    /**
+     * Default port for serving the coordinator locally.
+     */
+    private static final int PORT = 8090;
+    /**
+     * Maximum time to wait for every shard to load its map data.
+     */
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * Maximum number of times to route again after a shard reports a new version of its map data.
+     */
+    private static final int MAX_RETRIES = 3;
+    private final HttpClient client;
+    private final ObjectMapper mapper;
+    private final ShapeFactory factory;
+    private final List<String> bases;
+    /**
+     * The shards and the overlay built from their boundaries, replaced when a shard reloads its map data.
+     */
+    private volatile Overlay overlay;
+
+    /**
+     * Constructs a coordinator for the shards at the given base URLs, waiting for each shard to load its map data and
+     * then fetching its boundary distance table.
+     *
+     * @param bases   the base URLs of the shards, without trailing slashes.
+     * @param context the spatial context for points.
+     * @throws IOException          if a shard cannot be reached or does not load in time.
+     * @throws InterruptedException if interrupted while waiting for a shard.
+     */
+    public ShardCoordinator(List<String> bases, SpatialContext context) throws IOException, InterruptedException {
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        mapper = new ObjectMapper();
+        factory = context.getShapeFactory();
+        this.bases = List.copyOf(bases);
+        for (String base : bases) {
+            awaitReady(base);
+        }
+        overlay = fetchOverlay();
+    }
+
+    /**
+     * Returns the shortest route between the vertices closest to the given points, measured in degrees.
+     *
+     * @param start the start point.
+     * @param goal  the goal point.
+     * @return the shortest route between the vertices closest to the given points.
+     * @throws IOException              if a shard fails.
+     * @throws InterruptedException     if interrupted while waiting for a shard.
+     * @throws IllegalArgumentException if a point lies outside every region or there is no route.
+     */
+    public Route route(Point start, Point goal) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt += 1) {
+            Overlay current = overlay;
+            Route route = route(current, start, goal);
+            if (route != null) {
+                return route;
+            } else if (attempt == MAX_RETRIES) {
+                throw new IOException("Shard map data changed during every attempt to route");
+            }
+            refresh(current);
+        }
+    }
+
+    /**
+     * Returns the shortest route between the vertices closest to the given points using the given overlay, or null if
+     * a shard answered from a version of its map data other than the one the overlay was built from.
+     *
+     * @param overlay the overlay of the shard boundaries.
+     * @param start   the start point.
+     * @param goal    the goal point.
+     * @return the shortest route between the vertices closest to the given points, or null if the overlay is stale.
+     * @throws IOException              if a shard fails.
+     * @throws InterruptedException     if interrupted while waiting for a shard.
+     * @throws IllegalArgumentException if a point lies outside every region or there is no route.
+     */
+    private Route route(Overlay overlay, Point start, Point goal) throws IOException, InterruptedException {
+        Shard first = overlay.shardOf(start);
+        Shard last = overlay.shardOf(goal);
+        String query = "?lon=" + start.getLon() + "&lat=" + start.getLat();
+        if (first == last) {
+            query += "&toLon=" + goal.getLon() + "&toLat=" + goal.getLat();
+        }
+        CompletableFuture<JsonNode> fromStart = getAsync(first.base, "/shard/distances" + query);
+        CompletableFuture<JsonNode> fromGoal = getAsync(last.base,
+                "/shard/distances?lon=" + goal.getLon() + "&lat=" + goal.getLat());
+        JsonNode startDistances = join(fromStart);
+        JsonNode goalDistances = join(fromGoal);
+        if (!first.current(startDistances) || !last.current(goalDistances)) {
+            return null;
+        }
+        Point source = point(startDistances.get("vertex"));
+        Point target = point(goalDistances.get("vertex"));
+
+        // Search the overlay from the start vertex, which is joined to the boundary of its own shard.
+        Map<Point, Leg> startLegs = new HashMap<>();
+        List<Edge<Point>> startEdges = new ArrayList<>(overlay.edges.getOrDefault(source, List.of()));
+        for (int i = 0; i < first.boundary.size(); i += 1) {
+            double distance = startDistances.get("boundary").get(i).asDouble();
+            if (distance >= 0) {
+                startLegs.put(first.boundary.get(i), new Leg(distance, first));
+                startEdges.add(new Edge<>(source, first.boundary.get(i), distance));
+            }
+        }
+        DijkstraSolver<Point> solver = new DijkstraSolver<>(
+                vertex -> vertex.equals(source) ? startEdges : overlay.edges.getOrDefault(vertex, List.of()), source);
+
+        // Leave the overlay through whichever boundary vertex of the goal shard gives the shortest total.
+        double best = Double.POSITIVE_INFINITY;
+        Point exit = null;
+        if (first == last && startDistances.get("to").asDouble() >= 0) {
+            best = startDistances.get("to").asDouble();
+        }
+        for (int i = 0; i < last.boundary.size(); i += 1) {
+            double distance = goalDistances.get("boundary").get(i).asDouble();
+            double total = solver.distTo(last.boundary.get(i)) + distance;
+            if (distance >= 0 && total < best) {
+                best = total;
+                exit = last.boundary.get(i);
+            }
+        }
+        if (best == Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("No route between " + start + " and " + goal);
+        }
+
+        // Ask each shard along the way for the streets of its legs.
+        List<Shard> owners = new ArrayList<>();
+        List<CompletableFuture<JsonNode>> legs = new ArrayList<>();
+        if (exit == null) {
+            owners.add(first);
+            legs.add(leg(first, source, target));
+        } else {
+            List<Point> vertices = solver.solution(exit);
+            for (int i = 0; i + 1 < vertices.size(); i += 1) {
+                Point from = vertices.get(i);
+                Point to = vertices.get(i + 1);
+                Leg leg = overlay.legs.getOrDefault(from, Map.of()).get(to);
+                Leg direct = from.equals(source) ? startLegs.get(to) : null;
+                if (leg == null || direct != null && direct.distance < leg.distance) {
+                    leg = direct;
+                }
+                owners.add(leg.shard);
+                legs.add(leg(leg.shard, from, to));
+            }
+            owners.add(last);
+            legs.add(leg(last, exit, target));
+        }
+        List<Point> path = new ArrayList<>();
+        for (int i = 0; i < legs.size(); i += 1) {
+            JsonNode leg = join(legs.get(i));
+            if (!owners.get(i).current(leg)) {
+                return null;
+            }
+            for (Point point : points(leg.get("path"))) {
+                if (path.isEmpty() || !path.get(path.size() - 1).equals(point)) {
+                    path.add(point);
+                }
+            }
+        }
+        return new Route(path, best);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards.
+     */
+    public int size() {
+        return bases.size();
+    }
+
+    /**
+     * Replaces the given overlay with one built from the current boundaries of the shards, unless another thread has
+     * already replaced it.
+     *
+     * @param stale the overlay found to be stale.
+     * @throws IOException          if a shard cannot be reached.
+     * @throws InterruptedException if interrupted while waiting for a shard.
+     */
+    private synchronized void refresh(Overlay stale) throws IOException, InterruptedException {
+        if (overlay == stale) {
+            overlay = fetchOverlay();
+        }
+    }
+
+    /**
+     * Fetches the boundary of every shard and returns the overlay built from them.
+     *
+     * @return the overlay built from the current boundaries of the shards.
+     * @throws IOException          if a shard cannot be reached.
+     * @throws InterruptedException if interrupted while waiting for a shard.
+     */
+    private Overlay fetchOverlay() throws IOException, InterruptedException {
+        List<CompletableFuture<JsonNode>> responses = new ArrayList<>(bases.size());
+        for (String base : bases) {
+            responses.add(getAsync(base, "/shard/boundary"));
+        }
+        List<Shard> shards = new ArrayList<>(bases.size());
+        for (int i = 0; i < bases.size(); i += 1) {
+            JsonNode json = join(responses.get(i));
+            shards.add(new Shard(bases.get(i), json.get("version").asText(), json.get("region"),
+                    points(json.get("boundary")), json.get("table")));
+        }
+        return new Overlay(shards);
+    }
+
+    /**
+     * Returns a future for the vertices of the shortest path between the given vertices of the given shard.
+     *
+     * @param shard the shard.
+     * @param from  the first vertex.
+     * @param to    the last vertex.
+     * @return a future for the vertices of the path as {@code [lon, lat]} arrays.
+     */
+    private CompletableFuture<JsonNode> leg(Shard shard, Point from, Point to) {
+        return getAsync(shard.base, "/shard/route?fromLon=" + from.getLon() + "&fromLat=" + from.getLat()
+                + "&toLon=" + to.getLon() + "&toLat=" + to.getLat());
+    }
+
+    /**
+     * Adds the leg to the overlay unless the overlay already has a shorter leg between the same vertices.
+     *
+     * @param overlay the overlay edges by originating and terminating vertex.
+     * @param from    the originating vertex.
+     * @param to      the terminating vertex.
+     * @param leg     the leg.
+     */
+    private static void addLeg(Map<Point, Map<Point, Leg>> overlay, Point from, Point to, Leg leg) {
+        Map<Point, Leg> legs = overlay.computeIfAbsent(from, k -> new HashMap<>());
+        Leg existing = legs.get(to);
+        if (existing == null || leg.distance < existing.distance) {
+            legs.put(to, leg);
+        }
+    }
+
+    /**
+     * Waits until the shard at the given base URL reports that its map data is loaded.
+     *
+     * @param base the base URL of the shard.
+     * @throws IOException          if the shard does not load in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void awaitReady(String base) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/ready")).timeout(REQUEST_TIMEOUT).build();
+        while (System.nanoTime() < deadline) {
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(1000);
+        }
+        throw new IOException("Shard did not load in time: " + base);
+    }
+
+    /**
+     * Returns the JSON response to a request to the given shard.
+     *
+     * @param base the base URL of the shard.
+     * @param path the request path and query.
+     * @return the JSON response.
+     * @throws IOException          if the request fails.
+     * @throws InterruptedException if interrupted while waiting for the response.
+     */
+    private JsonNode get(String base, String path) throws IOException, InterruptedException {
+        return join(getAsync(base, path));
+    }
+
+    /**
+     * Returns a future for the JSON response to a request to the given shard.
+     *
+     * @param base the base URL of the shard.
+     * @param path the request path and query.
+     * @return a future for the JSON response that completes exceptionally if the shard fails.
+     */
+    private CompletableFuture<JsonNode> getAsync(String base, String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path)).timeout(REQUEST_TIMEOUT).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new HttpUpstream.UpstreamException(response.statusCode());
+            }
+            try {
+                return mapper.readTree(response.body());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Waits for the given future, unwrapping the cause of a failure.
+     *
+     * @param future the future.
+     * @return the result of the future.
+     * @throws IOException          if the request failed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static JsonNode join(CompletableFuture<JsonNode> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Returns the point at the given {@code [lon, lat]} array.
+     *
+     * @param json the {@code [lon, lat]} array.
+     * @return the point at the given coordinates.
+     */
+    private Point point(JsonNode json) {
+        return factory.pointXY(json.get(0).asDouble(), json.get(1).asDouble());
+    }
+
+    /**
+     * Returns the points at the given array of {@code [lon, lat]} arrays.
+     *
+     * @param json the array of {@code [lon, lat]} arrays.
+     * @return the points at the given coordinates.
+     */
+    private List<Point> points(JsonNode json) {
+        List<Point> result = new ArrayList<>(json.size());
+        for (JsonNode point : json) {
+            result.add(point(point));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the coordinator server for the shards listed in the {@code SHARDS} environment variable as base URLs
+     * separated by commas. Routes are served at {@code /route?startLon&startLat&goalLon&goalLat}.
+     *
+     * @param args unused.
+     * @throws Exception if the shards cannot be reached.
+     */
+    public static void main(String[] args) throws Exception {
+        String shards = System.getenv("SHARDS");
+        if (shards == null) {
+            throw new IllegalArgumentException("SHARDS must list the base URLs of the shards");
+        }
+        start(List.of(shards.split(",")), port());
+    }
+
+    /**
+     * Returns the port for the coordinator server from the {@code PORT} environment variable.
+     *
+     * @return the port for the coordinator server.
+     */
+    static int port() {
+        String port = System.getenv("PORT");
+        if (port != null) {
+            return Integer.parseInt(port);
+        }
+        return PORT;
+    }
+
+    /**
+     * Starts the coordinator server for the given shards.
+     *
+     * @param bases the base URLs of the shards, without trailing slashes.
+     * @param port  the port to serve on.
+     * @return the coordinator server.
+     * @throws Exception if the shards cannot be reached.
+     */
+    public static Javalin start(List<String> bases, int port) throws Exception {
+        SpatialContext context = SpatialContext.GEO;
+        ShapeFactory factory = context.getShapeFactory();
+        ShardCoordinator coordinator = new ShardCoordinator(bases, context);
+        Javalin app = Javalin.create().start(port);
+        app.get("/ready", ctx -> ctx.json(Map.of("shards", coordinator.size())));
+        app.get("/route", ctx -> {
+            Point start = factory.pointXY(ctx.queryParamAsClass("startLon", Double.class).get(),
+                    ctx.queryParamAsClass("startLat", Double.class).get());
+            Point goal = factory.pointXY(ctx.queryParamAsClass("goalLon", Double.class).get(),
+                    ctx.queryParamAsClass("goalLat", Double.class).get());
+            Route route;
+            try {
+                route = coordinator.route(start, goal);
+            } catch (IllegalArgumentException e) {
+                ctx.status(HttpStatus.NOT_FOUND).result(e.getMessage());
+                return;
+            }
+            double[][] path = new double[route.path.size()][];
+            for (int i = 0; i < path.length; i += 1) {
+                path[i] = new double[]{route.path.get(i).getLon(), route.path.get(i).getLat()};
+            }
+            ctx.json(Map.of("distance", route.distance * DistanceUtils.DEG_TO_KM * 1000, "path", path));
+        });
+        return app;
+    }
+
+    /**
+     * A route across shards.
+     */
+    public static class Route {
+        private final List<Point> path;
+        /**
+         * The length of the route in degrees.
+         */
+        private final double distance;
+
+        Route(List<Point> path, double distance) {
+            this.path = path;
+            this.distance = distance;
+        }
+
+        /**
+         * Returns the vertices along the route.
+         *
+         * @return the vertices along the route.
+         */
+        public List<Point> path() {
+            return path;
+        }
+
+        /**
+         * Returns the length of the route in degrees.
+         *
+         * @return the length of the route in degrees.
+         */
+        public double distance() {
+            return distance;
+        }
+    }
+
+    /**
+     * The shards and the edges between their boundary vertices, built from one version of each shard's map data.
+     */
+    private static class Overlay {
+        private final List<Shard> shards;
+        /**
+         * Edges between boundary vertices, keeping the shortest edge when several shards connect the same vertices.
+         */
+        private final Map<Point, Map<Point, Leg>> legs;
+        private final Map<Point, List<Edge<Point>>> edges;
+
+        Overlay(List<Shard> shards) {
+            this.shards = shards;
+            legs = new HashMap<>();
+            for (Shard shard : shards) {
+                for (int i = 0; i < shard.boundary.size(); i += 1) {
+                    for (int j = 0; j < shard.boundary.size(); j += 1) {
+                        double distance = shard.table.get(i).get(j).asDouble();
+                        if (i != j && distance >= 0) {
+                            addLeg(legs, shard.boundary.get(i), shard.boundary.get(j), new Leg(distance, shard));
+                        }
+                    }
+                }
+            }
+            edges = new HashMap<>();
+            for (Map.Entry<Point, Map<Point, Leg>> entry : legs.entrySet()) {
+                List<Edge<Point>> outgoing = new ArrayList<>();
+                for (Map.Entry<Point, Leg> leg : entry.getValue().entrySet()) {
+                    outgoing.add(new Edge<>(entry.getKey(), leg.getKey(), leg.getValue().distance));
+                }
+                edges.put(entry.getKey(), outgoing);
+            }
+        }
+
+        /**
+         * Returns the shard whose region contains the given point.
+         *
+         * @param point the point.
+         * @return the shard whose region contains the given point.
+         * @throws IllegalArgumentException if the point lies outside every region.
+         */
+        Shard shardOf(Point point) {
+            for (Shard shard : shards) {
+                if (shard.contains(point)) {
+                    return shard;
+                }
+            }
+            throw new IllegalArgumentException("Outside every region: " + point);
+        }
+    }
+
+    /**
+     * A shard and its boundary vertices as of one version of its map data.
+     */
+    private static class Shard {
+        private final String base;
+        private final String version;
+        private final double minLon;
+        private final double minLat;
+        private final double maxLon;
+        private final double maxLat;
+        private final List<Point> boundary;
+        /**
+         * Distances between boundary vertices as sent by the shard, indexed in the order of the boundary.
+         */
+        private final JsonNode table;
+
+        Shard(String base, String version, JsonNode region, List<Point> boundary, JsonNode table) {
+            this.base = base;
+            this.version = version;
+            minLon = region.get(0).asDouble();
+            minLat = region.get(1).asDouble();
+            maxLon = region.get(2).asDouble();
+            maxLat = region.get(3).asDouble();
+            this.boundary = boundary;
+            this.table = table;
+        }
+
+        /**
+         * Returns true if the given response from this shard was computed from the same version of its map data as
+         * this shard's boundary.
+         *
+         * @param response the response.
+         * @return true if the response was computed from the same version of the map data.
+         */
+        boolean current(JsonNode response) {
+            return version.equals(response.get("version").asText());
+        }
+
+        /**
+         * Returns true if the point lies in the region of this shard, following {@link MapGraph#inRegion(Point)}.
+         *
+         * @param point the point.
+         * @return true if the point lies in the region of this shard.
+         */
+        boolean contains(Point point) {
+            return point.getLon() >= minLon && (point.getLon() < maxLon || maxLon == 180)
+                    && point.getLat() >= minLat && (point.getLat() < maxLat || maxLat == 90);
+        }
+    }
+
+    /**
+     * The distance between two boundary vertices and the shard whose streets connect them.
+     */
+    private static class Leg {
+        private final double distance;
+        private final Shard shard;
+
+        Leg(double distance, Shard shard) {
+            this.distance = distance;
+            this.shard = shard;
+        }
+    }
+}
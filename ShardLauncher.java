@@ -0,0 +1,53 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a map split into regions on one machine for local testing: one {@link MapServer} process per region and a
+ * {@link ShardCoordinator} in this process that routes across them. The regions are bands of longitude divided at
+ * the longitudes given as arguments in increasing order, with the outer bands extending to the antimeridian so that
+ * every point lies in exactly one region. For example, {@code ShardLauncher -122.33} splits the map into a western
+ * and an eastern shard. Shards listen on consecutive ports starting from {@value #FIRST_SHARD_PORT}, and their
+ * output is written to this process.
+ *
+ * @see ShardCoordinator
+ */
+public class ShardLauncher {
+    /**
+     * Port of the first shard.
+     */
+    private static final int FIRST_SHARD_PORT = 8081;
+
+    public static void main(String[] args) throws Exception {
+        List<Double> splits = new ArrayList<>();
+        for (String arg : args) {
+            double split = Double.parseDouble(arg);
+            if (!splits.isEmpty() && split <= splits.get(splits.size() - 1)) {
+                throw new IllegalArgumentException("Split longitudes must be in increasing order");
+            }
+            splits.add(split);
+        }
+        if (splits.isEmpty()) {
+            System.err.println("Usage: ShardLauncher <longitude>...");
+            System.exit(2);
+        }
+
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+        List<String> bases = new ArrayList<>();
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        for (int i = 0; i <= splits.size(); i += 1) {
+            double west = i == 0 ? -180 : splits.get(i - 1);
+            double east = i == splits.size() ? 180 : splits.get(i);
+            int port = FIRST_SHARD_PORT + i;
+            ProcessBuilder builder = new ProcessBuilder(java.toString(),
+                    "-cp", System.getProperty("java.class.path"), "MapServer");
+            builder.environment().put("PORT", String.valueOf(port));
+            builder.environment().put("REGION", west + ",-90," + east + ",90");
+            builder.inheritIO();
+            processes.add(builder.start());
+            bases.add("http://localhost:" + port);
+        }
+        ShardCoordinator.start(bases, ShardCoordinator.port());
+    }
+}
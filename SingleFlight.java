@@ -0,0 +1,90 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key so that only the first request (the leader) does the work while
+ * every request that arrives before the work completes (a follower) shares the leader's result. Keys are forgotten as
+ * soon as the work completes, so results are never served to requests that arrive afterwards.
+ *
+ * @param <K> the type of request keys.
+ * @param <V> the type of results.
+ * @see MapServer
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight;
+    private final LongAdder leaders;
+    private final LongAdder followers;
+
+    /**
+     * Constructs an instance with no requests in flight.
+     */
+    public SingleFlight() {
+        inFlight = new ConcurrentHashMap<>();
+        leaders = new LongAdder();
+        followers = new LongAdder();
+    }
+
+    /**
+     * Returns a future for the result of the given work, starting the work only if no request for the same key is
+     * already in flight. The work runs on the calling thread of the leader, and anything it throws completes the
+     * shared future exceptionally.
+     *
+     * @param key  the request key.
+     * @param work the work that computes the result.
+     * @return a future for the result shared by all concurrent requests for the key.
+     */
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> work) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            followers.increment();
+            return existing;
+        }
+        leaders.increment();
+        result.whenComplete((value, error) -> inFlight.remove(key, result));
+        try {
+            work.get().whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        } catch (Throwable t) {
+            // Complete even on an Error, since otherwise the key would stay in flight and every later request for it
+            // would wait forever.
+            result.completeExceptionally(t);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of requests that started new work.
+     *
+     * @return the number of requests that started new work.
+     */
+    public long leaders() {
+        return leaders.sum();
+    }
+
+    /**
+     * Returns the number of requests that shared the result of a request already in flight.
+     *
+     * @return the number of requests that shared the result of a request already in flight.
+     */
+    public long followers() {
+        return followers.sum();
+    }
+
+    /**
+     * Returns the number of keys with work currently in flight.
+     *
+     * @return the number of keys with work currently in flight.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
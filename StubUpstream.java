@@ -0,0 +1,92 @@
+import io.javalin.Javalin;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the static map image API. Every request receives the same small PNG after an optional delay, so
+ * {@link MapServer} can be exercised without network access or an access token by setting its {@code UPSTREAM_URL}
+ * environment variable to this server.
+ *
+ * @see MapImageCache.Upstream
+ */
+public class StubUpstream {
+    /**
+     * Default port for the stub server.
+     */
+    private static final int PORT = 8081;
+    private final Javalin app;
+    private final AtomicLong requests;
+
+    /**
+     * Constructs and starts a stub server on the given port.
+     *
+     * @param port    the port to listen on, or 0 for any free port.
+     * @param delayMs the simulated upstream latency in milliseconds.
+     * @throws IOException if the stub image cannot be encoded.
+     */
+    public StubUpstream(int port, long delayMs) throws IOException {
+        byte[] image = image();
+        requests = new AtomicLong();
+        app = Javalin.create().start(port);
+        app.get("/*", ctx -> {
+            requests.incrementAndGet();
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            ctx.contentType("image/png").result(image);
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        long delayMs = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        new StubUpstream(port, delayMs);
+    }
+
+    /**
+     * Returns the base URL of this server, including the trailing slash.
+     *
+     * @return the base URL of this server.
+     */
+    public String url() {
+        return "http://localhost:" + app.port() + "/";
+    }
+
+    /**
+     * Returns the number of requests received so far.
+     *
+     * @return the number of requests received so far.
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        app.stop();
+    }
+
+    /**
+     * Returns a small encoded PNG image.
+     *
+     * @return a small encoded PNG image.
+     * @throws IOException if the image cannot be encoded.
+     */
+    private static byte[] image() throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0xe8e0d8));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,393 @@
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders the streets of a {@link MapGraph} into 256-pixel Web Mercator PNG tiles with Java2D. Tiles are rendered in
+ * parallel on a fixed pool of threads and kept in a cache bounded by total encoded size. Map views of any size are
+ * composed from cached tiles with the route and location pins drawn on top.
+ *
+ * @see <a href="https://wiki.openstreetmap.org/wiki/Slippy_map_tilenames">Slippy map tilenames</a>
+ * @see MapServer
+ */
+public class TileRenderer {
+    /**
+     * Width and height of a tile in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+    /**
+     * Largest supported tile zoom level.
+     */
+    public static final int MAX_ZOOM = 22;
+    /**
+     * Largest latitude shown by Web Mercator, where the world map is square.
+     */
+    private static final double MAX_LATITUDE = 85.0511287798066;
+    private static final Color BACKGROUND = new Color(0xf2efe9);
+    private static final Color STREET_CASING = new Color(0xd3cbc0);
+    private static final Color STREET = Color.WHITE;
+    private static final Color ROUTE = new Color(0x6cb5e6);
+    private static final Color PIN = new Color(0xe55e5e);
+    private final MapGraph map;
+    private final SpatialContext context;
+    private final ExecutorService pool;
+    private final long maxCacheBytes;
+    /**
+     * Access-ordered encoded tiles by tile key, from least to most recently used.
+     */
+    private final LinkedHashMap<Long, byte[]> cache;
+    private final SingleFlight<Long, byte[]> rendering;
+    private long cacheBytes;
+
+    /**
+     * Constructs a renderer for the given map that renders on one thread per available processor.
+     *
+     * @param map           the map whose streets are drawn.
+     * @param context       the spatial context for map points.
+     * @param maxCacheBytes the maximum total size of encoded tiles kept in the cache.
+     */
+    public TileRenderer(MapGraph map, SpatialContext context, long maxCacheBytes) {
+        this.map = map;
+        this.context = context;
+        this.maxCacheBytes = maxCacheBytes;
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "tile-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        rendering = new SingleFlight<>();
+    }
+
+    /**
+     * Returns a future for the encoded PNG of the given tile, rendering it only if it is not cached.
+     *
+     * @param z the zoom level.
+     * @param x the tile column.
+     * @param y the tile row.
+     * @return a future for the encoded PNG of the given tile.
+     * @throws IllegalArgumentException if the tile does not exist.
+     */
+    public CompletableFuture<byte[]> tile(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= 1 << z || y >= 1 << z) {
+            throw new IllegalArgumentException("No such tile: " + z + "/" + x + "/" + y);
+        }
+        long key = ((long) z << 58) | ((long) x << 29) | y;
+        synchronized (this) {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        return rendering.run(key, () -> CompletableFuture.supplyAsync(() -> {
+            byte[] image = encode(renderTile(z, x, y));
+            put(key, image);
+            return image;
+        }, pool));
+    }
+
+    /**
+     * Returns a future that completes once every tile covering the map at or below the given zoom level is cached.
+     *
+     * @param maxZoom the largest zoom level to render.
+     * @return a future that completes once the tiles are rendered.
+     */
+    public CompletableFuture<Void> prerender(int maxZoom) {
+        Rectangle bounds = map.bounds();
+        List<CompletableFuture<byte[]>> tiles = new ArrayList<>();
+        if (bounds != null) {
+            for (int z = 0; z <= maxZoom; z += 1) {
+                double world = (double) TILE_SIZE * (1L << z);
+                int minX = tileIndex(lonToX(bounds.getMinX(), world), z);
+                int maxX = tileIndex(lonToX(bounds.getMaxX(), world), z);
+                int minY = tileIndex(latToY(bounds.getMaxY(), world), z);
+                int maxY = tileIndex(latToY(bounds.getMinY(), world), z);
+                for (int x = minX; x <= maxX; x += 1) {
+                    for (int y = minY; y <= maxY; y += 1) {
+                        tiles.add(tile(z, x, y));
+                    }
+                }
+            }
+        }
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Returns a future for an encoded PNG of the map centered at the given point, composed from cached tiles with the
+     * route and location pins drawn on top. The scale matches the static map images requested by {@link MapServer}:
+     * 1024 pixels span the world at zoom 0.
+     *
+     * @param center    the center of the map image.
+     * @param zoom      the zoom level of the map image.
+     * @param width     the width of the map image in pixels.
+     * @param height    the height of the map image in pixels.
+     * @param route     the list of route points (or null).
+     * @param locations the list of locations (or null).
+     * @return a future for the encoded PNG of the map image.
+     */
+    public CompletableFuture<byte[]> view(Point center, int zoom, int width, int height, List<Point> route,
+                                          List<Point> locations) {
+        int z = Math.max(0, Math.min(zoom + 2, MAX_ZOOM));
+        double world = (double) TILE_SIZE * (1L << z);
+        double left = lonToX(center.getLon(), world) - width / 2.0;
+        double top = latToY(center.getLat(), world) - height / 2.0;
+        int minX = tileIndex(left, z);
+        int maxX = tileIndex(left + width, z);
+        int minY = tileIndex(top, z);
+        int maxY = tileIndex(top + height, z);
+
+        List<CompletableFuture<byte[]>> tiles = new ArrayList<>();
+        for (int x = minX; x <= maxX; x += 1) {
+            for (int y = minY; y <= maxY; y += 1) {
+                tiles.add(tile(z, x, y));
+            }
+        }
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture[0])).thenApplyAsync(ignored -> {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, width, height);
+            Iterator<CompletableFuture<byte[]>> next = tiles.iterator();
+            for (int x = minX; x <= maxX; x += 1) {
+                for (int y = minY; y <= maxY; y += 1) {
+                    BufferedImage tile = decode(next.next().join());
+                    g.drawImage(tile, (int) Math.round(x * TILE_SIZE - left),
+                            (int) Math.round(y * TILE_SIZE - top), null);
+                }
+            }
+            g.translate(-left, -top);
+            drawOverlays(g, world, route, locations);
+            g.dispose();
+            return encode(image);
+        }, pool);
+    }
+
+    /**
+     * Stops the rendering threads once the tiles already submitted are rendered. Tiles requested afterwards fail
+     * with a {@link java.util.concurrent.RejectedExecutionException}, so the renderer should be closed only once no
+     * request uses it.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the area shown in a map image of the given size, using the same scale as
+     * {@link #view(Point, int, int, int, List, List)}. The area is clipped to the valid longitudes and latitudes.
+     *
+     * @param factory the factory for the returned rectangle.
+     * @param center  the center of the map image.
+     * @param zoom    the zoom level of the map image.
+     * @param width   the width of the map image in pixels.
+     * @param height  the height of the map image in pixels.
+     * @return the area shown in the map image.
+     */
+    public static Rectangle viewport(ShapeFactory factory, Point center, int zoom, int width, int height) {
+        double world = TILE_SIZE * Math.pow(2, zoom + 2);
+        double x = lonToX(center.getLon(), world);
+        double y = latToY(center.getLat(), world);
+        return factory.rect(
+                Math.max(-180, xToLon(x - width / 2.0, world)), Math.min(180, xToLon(x + width / 2.0, world)),
+                yToLat(Math.min(world, y + height / 2.0), world), yToLat(Math.max(0, y - height / 2.0), world));
+    }
+
+    /**
+     * Draws the streets intersecting the given tile.
+     *
+     * @param z the zoom level.
+     * @param x the tile column.
+     * @param y the tile row.
+     * @return the rendered tile.
+     */
+    private BufferedImage renderTile(int z, int x, int y) {
+        double world = (double) TILE_SIZE * (1L << z);
+        double left = (double) x * TILE_SIZE;
+        double top = (double) y * TILE_SIZE;
+        // Pad the area by a few pixels so that street strokes crossing the tile edge are drawn on both tiles.
+        double pad = 4;
+        Rectangle area = context.getShapeFactory().rect(
+                Math.max(-180, xToLon(left - pad, world)), Math.min(180, xToLon(left + TILE_SIZE + pad, world)),
+                yToLat(Math.min(world, top + TILE_SIZE + pad), world), yToLat(Math.max(0, top - pad), world));
+
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        g.translate(-left, -top);
+
+        Path2D.Double streets = new Path2D.Double();
+        map.forEachEdge(area, e -> streets.append(new Line2D.Double(
+                lonToX(e.from.getLon(), world), latToY(e.from.getLat(), world),
+                lonToX(e.to.getLon(), world), latToY(e.to.getLat(), world)), false));
+        float width = (float) Math.max(0.5, Math.min(8.0, Math.pow(2, z - 14) * 3));
+        if (z >= 13) {
+            g.setColor(STREET_CASING);
+            g.setStroke(new BasicStroke(width + 1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.draw(streets);
+        }
+        g.setColor(z >= 13 ? STREET : STREET_CASING);
+        g.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.draw(streets);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws the route and location pins in world pixel coordinates.
+     *
+     * @param g         the graphics translated so that world pixel coordinates can be used.
+     * @param world     the width of the world in pixels at the current zoom level.
+     * @param route     the list of route points (or null).
+     * @param locations the list of locations (or null).
+     */
+    private static void drawOverlays(Graphics2D g, double world, List<Point> route, List<Point> locations) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (route != null && route.size() > 1) {
+            Path2D.Double path = new Path2D.Double();
+            path.moveTo(lonToX(route.get(0).getLon(), world), latToY(route.get(0).getLat(), world));
+            for (Point p : route.subList(1, route.size())) {
+                path.lineTo(lonToX(p.getLon(), world), latToY(p.getLat(), world));
+            }
+            g.setColor(ROUTE);
+            g.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.draw(path);
+        }
+        if (locations != null) {
+            for (Point p : locations) {
+                int px = (int) Math.round(lonToX(p.getLon(), world));
+                int py = (int) Math.round(latToY(p.getLat(), world));
+                g.setColor(PIN);
+                g.fillOval(px - 6, py - 6, 12, 12);
+                g.setColor(Color.WHITE);
+                g.setStroke(new BasicStroke(2));
+                g.drawOval(px - 6, py - 6, 12, 12);
+            }
+        }
+    }
+
+    /**
+     * Adds the encoded tile to the cache, evicting least-recently-used tiles to stay within the byte budget.
+     *
+     * @param key   the tile key.
+     * @param image the encoded tile.
+     */
+    private synchronized void put(long key, byte[] image) {
+        byte[] old = cache.put(key, image);
+        if (old != null) {
+            cacheBytes -= old.length;
+        }
+        cacheBytes += image.length;
+        Iterator<byte[]> lru = cache.values().iterator();
+        while (cacheBytes > maxCacheBytes) {
+            cacheBytes -= lru.next().length;
+            lru.remove();
+        }
+    }
+
+    /**
+     * Returns the given image encoded as a PNG.
+     *
+     * @param image the image to encode.
+     * @return the given image encoded as a PNG.
+     */
+    private static byte[] encode(BufferedImage image) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns the image decoded from the given PNG.
+     *
+     * @param png the encoded image.
+     * @return the image decoded from the given PNG.
+     */
+    private static BufferedImage decode(byte[] png) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(png));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the index of the tile containing the given world pixel coordinate, clamped to the valid range.
+     *
+     * @param pixel the world pixel coordinate.
+     * @param z     the zoom level.
+     * @return the index of the tile containing the given world pixel coordinate.
+     */
+    private static int tileIndex(double pixel, int z) {
+        int index = (int) Math.floor(pixel / TILE_SIZE);
+        return Math.max(0, Math.min(index, (1 << z) - 1));
+    }
+
+    /**
+     * Returns the Web Mercator world pixel column for the given longitude.
+     *
+     * @param lon   the longitude in degrees.
+     * @param world the width of the world in pixels.
+     * @return the world pixel column for the given longitude.
+     */
+    private static double lonToX(double lon, double world) {
+        return (lon + 180.0) / 360.0 * world;
+    }
+
+    /**
+     * Returns the Web Mercator world pixel row for the given latitude.
+     *
+     * @param lat   the latitude in degrees.
+     * @param world the height of the world in pixels.
+     * @return the world pixel row for the given latitude.
+     */
+    private static double latToY(double lat, double world) {
+        // Clamp so that latitudes beyond the square world map, including the poles, stay finite.
+        double phi = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(lat, MAX_LATITUDE)));
+        return (1.0 - Math.log(Math.tan(phi) + 1.0 / Math.cos(phi)) / Math.PI) / 2.0 * world;
+    }
+
+    /**
+     * Returns the longitude of the given Web Mercator world pixel column.
+     *
+     * @param x     the world pixel column.
+     * @param world the width of the world in pixels.
+     * @return the longitude in degrees.
+     */
+    private static double xToLon(double x, double world) {
+        return x / world * 360.0 - 180.0;
+    }
+
+    /**
+     * Returns the latitude of the given Web Mercator world pixel row.
+     *
+     * @param y     the world pixel row.
+     * @param world the height of the world in pixels.
+     * @return the latitude in degrees.
+     */
+    private static double yToLat(double y, double world) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * y / world))));
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lightweight per-request tracer that divides the time spent on a request into consecutive named stages using
+ * {@link System#nanoTime()}, and reports them as a {@code Server-Timing} response header so that browser developer
+ * tools show where the time went. Each stage lasts from the end of the previous stage (or the construction of the
+ * trace) until it is marked. A trace may be marked from the thread that completes an asynchronous stage, but only by
+ * one thread at a time: traces are not synchronized, and rely on the hand-off between stages (such as completing a
+ * {@link java.util.concurrent.CompletableFuture}) to make earlier marks visible to the next thread.
+ *
+ * @see MapServer
+ */
+public class Trace {
+    private final long start;
+    private long last;
+    /**
+     * The name of each stage in order, followed by unused capacity.
+     */
+    private String[] stages;
+    /**
+     * The duration of each stage in nanoseconds, parallel to the stage names.
+     */
+    private long[] durations;
+    private int size;
+    /**
+     * Counts such as the number of settled vertices, reported in the debug log only.
+     */
+    private final List<String> counts;
+
+    /**
+     * Constructs a trace whose first stage starts now.
+     */
+    public Trace() {
+        start = System.nanoTime();
+        last = start;
+        stages = new String[8];
+        durations = new long[8];
+        size = 0;
+        counts = new ArrayList<>();
+    }
+
+    /**
+     * Ends the current stage with the given name and starts the next stage.
+     *
+     * @param stage the name of the stage that just ended, a token without spaces or punctuation.
+     * @return the duration of the stage in nanoseconds.
+     */
+    public long mark(String stage) {
+        long now = System.nanoTime();
+        long duration = now - last;
+        last = now;
+        if (size == stages.length) {
+            stages = Arrays.copyOf(stages, size * 2);
+            durations = Arrays.copyOf(durations, size * 2);
+        }
+        stages[size] = stage;
+        durations[size] = duration;
+        size += 1;
+        return duration;
+    }
+
+    /**
+     * Records a count to include in the debug log.
+     *
+     * @param name  the name of the count.
+     * @param value the value of the count.
+     */
+    public void count(String name, long value) {
+        counts.add(name + "=" + value);
+    }
+
+    /**
+     * Returns the value of a {@code Server-Timing} header listing each stage and then the total time until now in
+     * milliseconds. The total is measured from the given start rather than the start of the trace because requests
+     * that share a computation also share its trace.
+     *
+     * @param requestStart the {@link System#nanoTime()} reading when the request started.
+     * @return the value of a {@code Server-Timing} header.
+     */
+    public String header(long requestStart) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            result.append(stages[i]).append(";dur=").append(millis(durations[i])).append(", ");
+        }
+        return result.append("total;dur=").append(millis(System.nanoTime() - requestStart)).toString();
+    }
+
+    /**
+     * Returns a one-line summary of the stages and counts for the debug log.
+     *
+     * @return a one-line summary of the stages and counts.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            result.append(stages[i]).append('=').append(millis(durations[i])).append("ms ");
+        }
+        for (String count : counts) {
+            result.append(count).append(' ');
+        }
+        return result.append("total=").append(millis(System.nanoTime() - start)).append("ms").toString();
+    }
+
+    /**
+     * Returns the given duration in milliseconds with microsecond precision.
+     *
+     * @param nanos the duration in nanoseconds.
+     * @return the given duration in milliseconds.
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current version of a value that can be replaced while requests are using it. Requests acquire the
+ * current version and release it when they finish, so a request sees one consistent version from start to end even
+ * if a newer version is swapped in meanwhile. Each version counts the requests still using it, and a replaced version
+ * reports when the last of them has finished so that the caller knows its memory can be reclaimed.
+ *
+ * @param <T> the type of values.
+ * @see MapServer
+ */
+public class Versioned<T> {
+    private final AtomicReference<Version<T>> current;
+
+    /**
+     * Constructs an instance with no version.
+     */
+    public Versioned() {
+        current = new AtomicReference<>();
+    }
+
+    /**
+     * Returns the current version after registering the caller as one of its users, or null if there is no version.
+     * Every non-null result must be released exactly once.
+     *
+     * @return the current version, or null if there is no version.
+     */
+    public Version<T> acquire() {
+        while (true) {
+            Version<T> version = current.get();
+            if (version == null || version.retain()) {
+                return version;
+            }
+            // The version was replaced and drained since it was read, so read the new one.
+        }
+    }
+
+    /**
+     * Returns the current value without registering the caller as a user, or null if there is no version.
+     *
+     * @return the current value, or null if there is no version.
+     */
+    public T get() {
+        Version<T> version = current.get();
+        return version != null ? version.value : null;
+    }
+
+    /**
+     * Returns the current version number, or 0 if there is no version.
+     *
+     * @return the current version number, or 0 if there is no version.
+     */
+    public long number() {
+        Version<T> version = current.get();
+        return version != null ? version.number : 0;
+    }
+
+    /**
+     * Atomically replaces the current version with a new version holding the given value. Requests that acquire a
+     * version afterwards see the new value, while requests already using the replaced version keep it until they
+     * release it.
+     *
+     * @param value the new value.
+     * @return the replaced version, whose {@link Version#drained()} future completes once no request is using it, or
+     * null if there was no version.
+     */
+    public Version<T> swap(T value) {
+        Version<T> previous;
+        Version<T> next;
+        do {
+            previous = current.get();
+            next = new Version<>(value, previous != null ? previous.number + 1 : 1);
+        } while (!current.compareAndSet(previous, next));
+        if (previous != null) {
+            // Drop the reference held on behalf of the holder itself.
+            previous.release();
+        }
+        return previous;
+    }
+
+    /**
+     * One version of the value and the number of requests using it.
+     *
+     * @param <T> the type of values.
+     */
+    public static class Version<T> {
+        private final T value;
+        private final long number;
+        /**
+         * Requests using this version, plus one while it is the current version.
+         */
+        private final AtomicInteger references;
+        private final CompletableFuture<Void> drained;
+
+        Version(T value, long number) {
+            this.value = value;
+            this.number = number;
+            references = new AtomicInteger(1);
+            drained = new CompletableFuture<>();
+        }
+
+        /**
+         * Returns the value of this version.
+         *
+         * @return the value of this version.
+         */
+        public T value() {
+            return value;
+        }
+
+        /**
+         * Returns the number of this version, starting from 1 and increasing with each swap.
+         *
+         * @return the number of this version.
+         */
+        public long number() {
+            return number;
+        }
+
+        /**
+         * Releases this version after the request that acquired it has finished using it.
+         */
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                drained.complete(null);
+            }
+        }
+
+        /**
+         * Returns a future that completes once this version has been replaced and every request using it has
+         * released it.
+         *
+         * @return a future that completes once this version is no longer used.
+         */
+        public CompletableFuture<Void> drained() {
+            return drained;
+        }
+
+        /**
+         * Registers another user of this version unless it has already drained.
+         *
+         * @return true if the caller may use this version, or false if it has drained.
+         */
+        private boolean retain() {
+            int count = references.get();
+            while (count > 0) {
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                count = references.get();
+            }
+            return false;
+        }
+    }
+}
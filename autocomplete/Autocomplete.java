@@ -1,7 +1,13 @@
 package autocomplete;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Suggest exact-character prefix matches for any query {@link CharSequence}.
@@ -10,6 +16,8 @@ import java.util.List;
  * @see SequentialSearchAutocomplete
  * @see BinarySearchAutocomplete
  * @see TernarySearchTreeAutocomplete
+ * @see WeightedTernarySearchTreeAutocomplete
+ * @see RadixTrieAutocomplete
  */
 public interface Autocomplete {
     /**
@@ -20,12 +28,54 @@ public interface Autocomplete {
     void addAll(Collection<? extends CharSequence> terms);
 
     /**
-     * Returns all autocompletion terms that match the given prefix.
+     * Returns all autocompletion terms that match the given prefix. Every term starts with the empty prefix, so the
+     * empty prefix matches every term.
      *
      * @param prefix search query.
      */
     List<CharSequence> allMatches(CharSequence prefix);
 
+    /**
+     * Returns an iterator over the autocompletion terms that match the given prefix, in the same order as
+     * {@link #allMatches(CharSequence)}. Matches are found as the iterator advances, so callers that stop early do not
+     * pay for the matches they never see. The empty prefix matches every term, so callers can iterate over all terms
+     * without copying them. The iterator must not be used after terms are next added.
+     *
+     * @param prefix search query.
+     * @return an iterator over the autocompletion terms that match the given prefix.
+     */
+    Iterator<CharSequence> iterator(CharSequence prefix);
+
+    /**
+     * Returns a sequential stream of the autocompletion terms that match the given prefix, in the same order as
+     * {@link #allMatches(CharSequence)}, found lazily as by {@link #iterator(CharSequence)}.
+     *
+     * @param prefix search query.
+     * @return a stream of the autocompletion terms that match the given prefix.
+     */
+    default Stream<CharSequence> stream(CharSequence prefix) {
+        Spliterator<CharSequence> spliterator = Spliterators.spliteratorUnknownSize(iterator(prefix),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Returns up to the given number of autocompletion terms that match the given prefix: the first ones in the order
+     * of {@link #allMatches(CharSequence)}. No further matches are searched for once the limit is reached.
+     *
+     * @param prefix search query.
+     * @param limit  the maximum number of terms to return.
+     * @return up to the given number of autocompletion terms that match the given prefix.
+     */
+    default List<CharSequence> matches(CharSequence prefix, int limit) {
+        List<CharSequence> matches = new ArrayList<>();
+        Iterator<CharSequence> iterator = iterator(prefix);
+        while (matches.size() < limit && iterator.hasNext()) {
+            matches.add(iterator.next());
+        }
+        return matches;
+    }
+
     /**
      * Returns true if and only if the given term matches the given prefix.
      *
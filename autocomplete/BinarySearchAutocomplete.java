@@ -3,6 +3,7 @@ package autocomplete;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -31,23 +32,71 @@ public class BinarySearchAutocomplete implements Autocomplete {
         Collections.sort(elements, CharSequence::compare);
     }
 
+    /**
+     * {@inheritDoc} The matches are a contiguous range of the sorted terms, so the result is an unmodifiable view of
+     * that range rather than a copy, and finding it takes two binary searches regardless of the number of matches.
+     * The view is only valid until terms are next added.
+     */
     @Override
     public List<CharSequence> allMatches(CharSequence prefix) {
-        List<CharSequence> matchList = new ArrayList<>();
-        int start = Collections.binarySearch(elements, prefix, CharSequence::compare);
-        if(start < 1) {
-            start = -(start +1);
-        }
+        int start = firstAtLeast(prefix, 0);
+        int end = firstAtLeast(prefix, 1);
+        return Collections.unmodifiableList(elements.subList(start, end));
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        return allMatches(prefix).iterator();
+    }
 
-        for(int i = start; i < elements.size(); i++) {
-            if(elements.get(i).toString().startsWith(prefix.toString())) {
-                matchList.add(elements.get(i));
+    /**
+     * {@inheritDoc} Like {@link #allMatches(CharSequence)}, the result is an unmodifiable view of the sorted terms.
+     */
+    @Override
+    public List<CharSequence> matches(CharSequence prefix, int limit) {
+        int start = firstAtLeast(prefix, 0);
+        int end = firstAtLeast(prefix, 1);
+        return Collections.unmodifiableList(elements.subList(start, start + Math.max(0, Math.min(limit, end - start))));
+    }
+
+    /**
+     * Returns the index of the first term whose comparison with the prefix is at least the given sign.
+     *
+     * @param prefix the prefix.
+     * @param sign   0 to find the first match, or 1 to find the first term after every match.
+     * @return the index of the first term whose comparison with the prefix is at least the given sign.
+     */
+    private int firstAtLeast(CharSequence prefix, int sign) {
+        int lo = 0;
+        int hi = elements.size();
+        while (lo < hi) {
+            int middle = (lo + hi) >>> 1;
+            if (comparePrefix(elements.get(middle), prefix) < sign) {
+                lo = middle + 1;
+            } else {
+                hi = middle;
             }
-            else {
-                break;
+        }
+        return lo;
+    }
+
+    /**
+     * Compares the term to the prefix using only as many characters of the term as the prefix has, so that every
+     * term that starts with the prefix compares equal to it. The order is otherwise the same as
+     * {@link CharSequence#compare}, so the terms that match are contiguous in sorted order.
+     *
+     * @param term   the term.
+     * @param prefix the prefix.
+     * @return a negative number, zero, or a positive number as the term is before, matches, or is after the prefix.
+     */
+    private static int comparePrefix(CharSequence term, CharSequence prefix) {
+        int length = Math.min(term.length(), prefix.length());
+        for (int i = 0; i < length; i += 1) {
+            int difference = term.charAt(i) - prefix.charAt(i);
+            if (difference != 0) {
+                return difference;
             }
         }
-        
-        return matchList;
+        return term.length() < prefix.length() ? -1 : 0;
     }
 }
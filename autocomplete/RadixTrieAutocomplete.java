@@ -0,0 +1,309 @@
+package autocomplete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Radix trie (Patricia trie) implementation of the {@link Autocomplete} interface stored in primitive arrays. Every
+ * chain of nodes with a single child is compressed into one edge labeled with a string, so the trie has at most two
+ * nodes per term rather than one node per character. Nodes are indexes into parallel {@code int} arrays, and edge
+ * labels are ranges of one shared {@code char} pool. Splitting an edge only divides its range, so the characters of
+ * each term are copied into the pool at most once.
+ *
+ * @see Autocomplete
+ * @see TernarySearchTreeAutocomplete
+ */
+public class RadixTrieAutocomplete implements Autocomplete {
+    /**
+     * The index of the root node, whose label is empty.
+     */
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    /**
+     * The start of the label of each node in the pool.
+     */
+    private int[] labelStart;
+    /**
+     * The length of the label of each node.
+     */
+    private int[] labelLength;
+    /**
+     * The first child of each node, or {@link #NONE}. Children are linked through {@link #nextSibling} in increasing
+     * order of the first character of their labels.
+     */
+    private int[] firstChild;
+    private int[] nextSibling;
+    /**
+     * True for each node at the end of a term.
+     */
+    private boolean[] isTerm;
+    private int size;
+    /**
+     * The characters of every label.
+     */
+    private char[] pool;
+    private int poolSize;
+
+    /**
+     * Constructs an empty instance.
+     */
+    public RadixTrieAutocomplete() {
+        labelStart = new int[16];
+        labelLength = new int[16];
+        firstChild = new int[16];
+        nextSibling = new int[16];
+        isTerm = new boolean[16];
+        pool = new char[64];
+        size = 0;
+        poolSize = 0;
+        newNode(0, 0);
+    }
+
+    @Override
+    public void addAll(Collection<? extends CharSequence> terms) {
+        for (CharSequence term : terms) {
+            if (!term.isEmpty()) {
+                add(term);
+            }
+        }
+    }
+
+    @Override
+    public List<CharSequence> allMatches(CharSequence prefix) {
+        List<CharSequence> matches = new ArrayList<>();
+        iterator(prefix).forEachRemaining(matches::add);
+        return matches;
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        // The empty prefix ends at the root, whose label is empty, so it matches every term.
+        int node = ROOT;
+        int i = 0;
+        StringBuilder path = new StringBuilder(prefix);
+        while (i < prefix.length()) {
+            node = child(node, prefix.charAt(i));
+            if (node == NONE) {
+                return Collections.emptyIterator();
+            }
+            int length = labelLength[node];
+            int start = labelStart[node];
+            int compared = Math.min(length, prefix.length() - i);
+            for (int j = 1; j < compared; j += 1) {
+                if (pool[start + j] != prefix.charAt(i + j)) {
+                    return Collections.emptyIterator();
+                }
+            }
+            // The prefix may end partway along the label, in which case every match continues with the rest of it.
+            path.append(pool, start + compared, length - compared);
+            i += compared;
+        }
+        return new MatchIterator(node, path);
+    }
+
+    /**
+     * Adds the given non-empty term.
+     *
+     * @param term the term.
+     */
+    private void add(CharSequence term) {
+        int node = ROOT;
+        int i = 0;
+        while (i < term.length()) {
+            char c = term.charAt(i);
+            // Find the child starting with the next character, or the place to insert it among its siblings.
+            int previous = NONE;
+            int child = firstChild[node];
+            while (child != NONE && pool[labelStart[child]] < c) {
+                previous = child;
+                child = nextSibling[child];
+            }
+            if (child == NONE || pool[labelStart[child]] != c) {
+                int leaf = newNode(append(term, i), term.length() - i);
+                isTerm[leaf] = true;
+                nextSibling[leaf] = child;
+                if (previous == NONE) {
+                    firstChild[node] = leaf;
+                } else {
+                    nextSibling[previous] = leaf;
+                }
+                return;
+            }
+            int start = labelStart[child];
+            int length = labelLength[child];
+            int common = 1;
+            while (common < length && i + common < term.length() && pool[start + common] == term.charAt(i + common)) {
+                common += 1;
+            }
+            if (common < length) {
+                // Split the edge: the child keeps the common part, and a new node below it takes the rest.
+                int rest = newNode(start + common, length - common);
+                firstChild[rest] = firstChild[child];
+                isTerm[rest] = isTerm[child];
+                labelLength[child] = common;
+                firstChild[child] = rest;
+                isTerm[child] = false;
+            }
+            node = child;
+            i += common;
+        }
+        isTerm[node] = true;
+    }
+
+    /**
+     * Returns the child of the given node whose label starts with the given character, or {@link #NONE}.
+     *
+     * @param node the parent node.
+     * @param c    the first character of the label.
+     * @return the child of the given node whose label starts with the given character, or {@link #NONE}.
+     */
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            char first = pool[labelStart[child]];
+            if (first == c) {
+                return child;
+            } else if (first > c) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns a new node with the given label and no children or siblings, growing the arrays if needed.
+     *
+     * @param start  the start of the label in the pool.
+     * @param length the length of the label.
+     * @return the index of the new node.
+     */
+    private int newNode(int start, int length) {
+        if (size == labelStart.length) {
+            int capacity = size * 2;
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            isTerm = Arrays.copyOf(isTerm, capacity);
+        }
+        labelStart[size] = start;
+        labelLength[size] = length;
+        firstChild[size] = NONE;
+        nextSibling[size] = NONE;
+        size += 1;
+        return size - 1;
+    }
+
+    /**
+     * Appends the characters of the term from the given index to the pool, growing the pool if needed.
+     *
+     * @param term the term.
+     * @param from the index of the first character to append.
+     * @return the start of the appended characters in the pool.
+     */
+    private int append(CharSequence term, int from) {
+        int length = term.length() - from;
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        int start = poolSize;
+        for (int i = from; i < term.length(); i += 1) {
+            pool[poolSize] = term.charAt(i);
+            poolSize += 1;
+        }
+        return start;
+    }
+
+    /**
+     * Iterates over the terms in the subtree rooted at a node in sorted order, walking the trie with an explicit
+     * stack. Each entry on the stack is a node to visit with the length of the path before its label. Visiting a node
+     * pushes its next sibling and then its first child, so that its children are visited before its siblings.
+     */
+    private class MatchIterator implements Iterator<CharSequence> {
+        private int[] nodes;
+        private int[] depths;
+        private int top;
+        /**
+         * The characters along the path from the root of the trie to the end of the label of the node last visited.
+         */
+        private final StringBuilder path;
+        /**
+         * The next match to return, or null if there are no more matches.
+         */
+        private String next;
+
+        /**
+         * Constructs an iterator over the terms in the subtree rooted at the given node.
+         *
+         * @param node the root of the subtree.
+         * @param path the characters along the path from the root of the trie to the end of the node's label.
+         */
+        MatchIterator(int node, StringBuilder path) {
+            nodes = new int[16];
+            depths = new int[16];
+            top = 0;
+            this.path = path;
+            if (firstChild[node] != NONE) {
+                push(firstChild[node], path.length());
+            }
+            next = isTerm[node] ? path.toString() : advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public CharSequence next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = advance();
+            return result;
+        }
+
+        /**
+         * Visits nodes until reaching the end of a term.
+         *
+         * @return the term, or null if every node has been visited.
+         */
+        private String advance() {
+            while (top > 0) {
+                top -= 1;
+                int node = nodes[top];
+                int depth = depths[top];
+                path.setLength(depth);
+                path.append(pool, labelStart[node], labelLength[node]);
+                if (nextSibling[node] != NONE) {
+                    push(nextSibling[node], depth);
+                }
+                if (firstChild[node] != NONE) {
+                    push(firstChild[node], path.length());
+                }
+                if (isTerm[node]) {
+                    return path.toString();
+                }
+            }
+            return null;
+        }
+
+        private void push(int node, int depth) {
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                depths = Arrays.copyOf(depths, top * 2);
+            }
+            nodes[top] = node;
+            depths[top] = depth;
+            top += 1;
+        }
+    }
+}
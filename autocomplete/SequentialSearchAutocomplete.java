@@ -2,6 +2,7 @@ package autocomplete;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -39,4 +40,10 @@ public class SequentialSearchAutocomplete implements Autocomplete {
         }
         return matchList;
     }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        String start = prefix.toString();
+        return elements.stream().filter(term -> term.toString().startsWith(start)).iterator();
+    }
 }
@@ -1,133 +1,306 @@
 package autocomplete;
 
-import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * Ternary search tree (TST) implementation of the {@link Autocomplete} interface.
+ * Ternary search tree (TST) implementation of the {@link Autocomplete} interface stored in primitive arrays. Nodes are
+ * indexes into parallel arrays rather than objects, and every operation walks the tree in a loop with an explicit
+ * stack where needed, so the depth of the tree is limited only by memory and not by the call stack. Terms added
+ * together are inserted in a balanced order, so sorted input does not degrade the tree into long chains of siblings.
  *
  * @see Autocomplete
  */
 public class TernarySearchTreeAutocomplete implements Autocomplete {
+    private static final int NONE = -1;
+    /**
+     * The overall root of the tree: the first character of the first autocompletion term added to this tree, or
+     * {@link #NONE} if the tree is empty.
+     */
+    private int overallRoot;
+    /**
+     * The character of each node.
+     */
+    private char[] data;
+    /**
+     * True for each node at the end of a term.
+     */
+    private boolean[] isTerm;
+    /**
+     * The child of each node with a smaller character, or {@link #NONE}.
+     */
+    private int[] left;
+    /**
+     * The child of each node with the next character of its terms, or {@link #NONE}.
+     */
+    private int[] mid;
     /**
-     * The overall root of the tree: the first character of the first autocompletion term added to this tree.
+     * The child of each node with a larger character, or {@link #NONE}.
      */
-    private Node overallRoot;
+    private int[] right;
+    private int size;
 
     /**
      * Constructs an empty instance.
      */
-    public TernarySearchTreeAutocomplete() { 
-        overallRoot = null; 
-    } 
-    
-    private Node put(Node node, CharSequence key, int i) { 
-        char c = key.charAt(i); 
-        if(node == null) { 
-            node = new Node(c); 
-        } 
-        
-        if(c < node.data){ 
-            node.left = put(node.left, key, i); 
-        } 
-    
-        else if (c > node.data) { 
-            node.right = put(node.right, key, i); 
-        } 
-    
-        else if (i < key.length() - 1) { 
-            node.mid = put(node.mid, key, i+1); 
-        
-        } else {
-            node.isTerm = true; 	
-        } 
-        
-        return node; 
-    
-    } 
-
-    @Override 
-    public void addAll(Collection<? extends CharSequence> terms) { 
-        for (CharSequence c : terms) { 
-            overallRoot = put(overallRoot, c, 0); 
-        } 
-    } 
-    
-    @Override 
-    public List<CharSequence> allMatches(CharSequence prefix) { 
-        if(prefix == null) {
+    public TernarySearchTreeAutocomplete() {
+        overallRoot = NONE;
+        data = new char[16];
+        isTerm = new boolean[16];
+        left = new int[16];
+        mid = new int[16];
+        right = new int[16];
+        size = 0;
+    }
+
+    @Override
+    public void addAll(Collection<? extends CharSequence> terms) {
+        CharSequence[] sorted = terms.toArray(new CharSequence[0]);
+        Arrays.sort(sorted, CharSequence::compare);
+        // Insert the median of each range before the rest of it, so that among terms sharing a prefix, the first one
+        // inserted after the prefix splits the others evenly. The ranges left to insert are kept as pairs of bounds.
+        int[] ranges = new int[128];
+        int top = 0;
+        ranges[top++] = 0;
+        ranges[top++] = sorted.length;
+        while (top > 0) {
+            int hi = ranges[--top];
+            int lo = ranges[--top];
+            if (lo < hi) {
+                int median = (lo + hi) >>> 1;
+                put(sorted[median]);
+                ranges[top++] = median + 1;
+                ranges[top++] = hi;
+                ranges[top++] = lo;
+                ranges[top++] = median;
+            }
+        }
+    }
+
+    @Override
+    public List<CharSequence> allMatches(CharSequence prefix) {
+        List<CharSequence> matches = new ArrayList<>();
+        iterator(prefix).forEachRemaining(matches::add);
+        return matches;
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        if (prefix == null) {
             throw new IllegalArgumentException("calls with null");
         }
-        List<CharSequence> matches = new ArrayList<>(); 
-        Node x = get(overallRoot, prefix, 0); 
-        if(x == null){ 
-            return matches; 
-        } 
-        
-        if(x.isTerm){ 
-            matches.add(prefix); 
-        } 
-        collect(x.mid, new StringBuilder(prefix), matches); 
-        return matches; 
-    } 
-    
-    
-    private Node get(Node node, CharSequence key, int i) {
-        if(node == null) {
-            return null;
+        if (prefix.isEmpty()) {
+            return overallRoot == NONE ? Collections.emptyIterator() : new MatchIterator(overallRoot);
         }
+        int x = get(prefix);
+        if (x == NONE) {
+            return Collections.emptyIterator();
+        }
+        return new MatchIterator(x, prefix);
+    }
 
-        if(key.length() == 0) {
-            throw new IllegalArgumentException("Key must have length >=1");
+    /**
+     * Adds the given term, ignoring it if it is empty.
+     *
+     * @param key the term.
+     */
+    private void put(CharSequence key) {
+        if (key.isEmpty()) {
+            return;
         }
-        char c = key.charAt(i);
-        
-        if(c < node.data) {
-            return get(node.left, key, i);
+        if (overallRoot == NONE) {
+            overallRoot = newNode(key.charAt(0));
         }
-
-        if(c > node.data) {
-            return get(node.right, key, i);
+        int node = overallRoot;
+        int i = 0;
+        while (true) {
+            char c = key.charAt(i);
+            if (c < data[node]) {
+                if (left[node] == NONE) {
+                    int child = newNode(c);
+                    left[node] = child;
+                }
+                node = left[node];
+            } else if (c > data[node]) {
+                if (right[node] == NONE) {
+                    int child = newNode(c);
+                    right[node] = child;
+                }
+                node = right[node];
+            } else if (i < key.length() - 1) {
+                i += 1;
+                if (mid[node] == NONE) {
+                    int child = newNode(key.charAt(i));
+                    mid[node] = child;
+                }
+                node = mid[node];
+            } else {
+                isTerm[node] = true;
+                return;
+            }
         }
+    }
 
-        else if(i < key.length() -1) {
-            return get(node.mid, key, i + 1);
+    /**
+     * Returns the node for the last character of the given non-empty key, or {@link #NONE} if no term starts with it.
+     *
+     * @param key the key.
+     * @return the node for the last character of the given key, or {@link #NONE}.
+     */
+    private int get(CharSequence key) {
+        int node = overallRoot;
+        int i = 0;
+        while (node != NONE) {
+            char c = key.charAt(i);
+            if (c < data[node]) {
+                node = left[node];
+            } else if (c > data[node]) {
+                node = right[node];
+            } else if (i < key.length() - 1) {
+                i += 1;
+                node = mid[node];
+            } else {
+                return node;
+            }
         }
+        return NONE;
+    }
 
-        else {
-            return node;
+    /**
+     * Returns a new node with the given character and no children, growing the arrays if needed. Callers must not
+     * hold references to the arrays across this call, since growing replaces them.
+     *
+     * @param c the character of the node.
+     * @return the index of the new node.
+     */
+    private int newNode(char c) {
+        if (size == data.length) {
+            int capacity = size * 2;
+            data = Arrays.copyOf(data, capacity);
+            isTerm = Arrays.copyOf(isTerm, capacity);
+            left = Arrays.copyOf(left, capacity);
+            mid = Arrays.copyOf(mid, capacity);
+            right = Arrays.copyOf(right, capacity);
         }
+        data[size] = c;
+        left[size] = NONE;
+        mid[size] = NONE;
+        right[size] = NONE;
+        size += 1;
+        return size - 1;
     }
 
-    private void collect(Node node, StringBuilder prefix, List<CharSequence> matches) {
-        if(node == null) {
-            return;
+    /**
+     * Iterates over the terms in the subtree below a node in sorted order, walking the tree with an explicit stack.
+     * Each entry on the stack is a node to visit with the length of the path before it. Visiting a node pushes its
+     * right subtree, then its mid subtree, then the complement of the node itself, then its left subtree, so that the
+     * node's own character is appended after its left subtree is done and before its mid subtree starts.
+     */
+    private class MatchIterator implements Iterator<CharSequence> {
+        private int[] nodes;
+        private int[] depths;
+        private int top;
+        /**
+         * The characters along the path from the root of the tree to the node last visited.
+         */
+        private final StringBuilder path;
+        /**
+         * The next match to return, or null if there are no more matches.
+         */
+        private String next;
+
+        /**
+         * Constructs an iterator over every term in the tree.
+         *
+         * @param root the overall root of the tree.
+         */
+        MatchIterator(int root) {
+            nodes = new int[16];
+            depths = new int[16];
+            top = 0;
+            path = new StringBuilder();
+            push(root, 0);
+            next = advance();
         }
-        collect(node.left, prefix, matches);
 
-        if(node.isTerm) {
-            matches.add(prefix.toString() + node.data);
+        /**
+         * Constructs an iterator over the given prefix, if it is a term, followed by every term below it.
+         *
+         * @param node   the node for the last character of the prefix.
+         * @param prefix the prefix.
+         */
+        MatchIterator(int node, CharSequence prefix) {
+            nodes = new int[16];
+            depths = new int[16];
+            top = 0;
+            path = new StringBuilder(prefix);
+            if (mid[node] != NONE) {
+                push(mid[node], prefix.length());
+            }
+            next = isTerm[node] ? prefix.toString() : advance();
         }
 
-        collect(node.mid, prefix.append(node.data), matches);
-        prefix.deleteCharAt(prefix.length() - 1);
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
 
-        collect(node.right, prefix, matches);
-    }
-    private static class Node {
-        private final char data;
-        private boolean isTerm;
-        private Node left;
-        private Node mid;
-        private Node right;
-
-        public Node(char data) {
-            this.data = data;
-            this.isTerm = false;
-            this.left = null;
-            this.mid = null;
-            this.right = null;
+        @Override
+        public CharSequence next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = advance();
+            return result;
+        }
+
+        /**
+         * Visits nodes until reaching the end of a term.
+         *
+         * @return the term, or null if every node has been visited.
+         */
+        private String advance() {
+            while (top > 0) {
+                top -= 1;
+                int x = nodes[top];
+                int depth = depths[top];
+                if (x < 0) {
+                    x = ~x;
+                    path.setLength(depth);
+                    path.append(data[x]);
+                    if (isTerm[x]) {
+                        return path.toString();
+                    }
+                } else {
+                    if (right[x] != NONE) {
+                        push(right[x], depth);
+                    }
+                    if (mid[x] != NONE) {
+                        push(mid[x], depth + 1);
+                    }
+                    push(~x, depth);
+                    if (left[x] != NONE) {
+                        push(left[x], depth);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void push(int node, int depth) {
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                depths = Arrays.copyOf(depths, top * 2);
+            }
+            nodes[top] = node;
+            depths[top] = depth;
+            top += 1;
         }
     }
 }
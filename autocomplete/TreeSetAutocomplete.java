@@ -28,7 +28,7 @@ public class TreeSetAutocomplete implements Autocomplete {
     @Override
     public List<CharSequence> allMatches(CharSequence prefix) {
         List<CharSequence> result = new ArrayList<>();
-        if (prefix == null || prefix.length() == 0) {
+        if (prefix == null) {
             return result;
         }
         CharSequence start = elements.ceiling(prefix);
@@ -44,4 +44,14 @@ public class TreeSetAutocomplete implements Autocomplete {
         }
         return result;
     }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        if (prefix == null) {
+            return Collections.emptyIterator();
+        }
+        return elements.tailSet(prefix, true).stream()
+                .takeWhile(term -> Autocomplete.isPrefixOf(prefix, term))
+                .iterator();
+    }
 }
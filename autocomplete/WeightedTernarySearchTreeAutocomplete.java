@@ -0,0 +1,426 @@
+package autocomplete;
+
+import java.util.*;
+
+/**
+ * Ternary search tree (TST) implementation of the {@link Autocomplete} interface that also returns the best matches
+ * for a prefix without visiting every match. Each term has a weight, and lighter terms rank first, following the
+ * convention of a min priority queue. Every node records the lightest weight and the number of terms in its subtree,
+ * so {@link #topMatches(CharSequence, int)} expands the tree best-first and stops after the requested number of
+ * matches, and {@link #countMatches(CharSequence)} never visits the matches at all.
+ *
+ * @see Autocomplete
+ * @see TernarySearchTreeAutocomplete
+ */
+public class WeightedTernarySearchTreeAutocomplete implements Autocomplete {
+    /**
+     * Orders candidates by weight, placing terms before subtrees of equal weight so that they are returned first.
+     */
+    private static final Comparator<Candidate> ORDER = Comparator.<Candidate>comparingDouble(c -> c.weight)
+            .thenComparing(c -> c.whole);
+    /**
+     * The overall root of the tree: the first character of the first autocompletion term added to this tree.
+     */
+    private Node overallRoot;
+
+    /**
+     * Constructs an empty instance.
+     */
+    public WeightedTernarySearchTreeAutocomplete() {
+        overallRoot = null;
+    }
+
+    /**
+     * Adds every term in the given collection with a weight of 0, keeping the weight of terms already added.
+     *
+     * @param terms collection containing elements to be added.
+     */
+    @Override
+    public void addAll(Collection<? extends CharSequence> terms) {
+        for (CharSequence term : terms) {
+            if (!term.isEmpty()) {
+                Node node = get(overallRoot, term);
+                if (node == null || node.term == null) {
+                    add(term, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the given term with the given weight, replacing the weight if the term was already added. Empty terms are
+     * ignored. Replacing a weight with a heavier one leaves the recorded lightest weights of the enclosing subtrees
+     * unchanged, which keeps results correct but may visit more nodes.
+     *
+     * @param term   the autocompletion term.
+     * @param weight the weight of the term, where lighter terms rank first.
+     */
+    public void add(CharSequence term, double weight) {
+        if (!term.isEmpty()) {
+            overallRoot = put(overallRoot, term, 0, weight);
+        }
+    }
+
+    @Override
+    public List<CharSequence> allMatches(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        List<CharSequence> matches = new ArrayList<>();
+        if (prefix.isEmpty()) {
+            collect(overallRoot, matches);
+            return matches;
+        }
+        Node x = get(overallRoot, prefix);
+        if (x != null) {
+            if (x.term != null) {
+                matches.add(x.term);
+            }
+            collect(x.mid, matches);
+        }
+        return matches;
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        Deque<Candidate> stack = new ArrayDeque<>();
+        if (prefix.isEmpty()) {
+            pushSubtree(stack, overallRoot);
+        } else {
+            Node x = get(overallRoot, prefix);
+            if (x != null) {
+                pushSubtree(stack, x.mid);
+                if (x.term != null) {
+                    stack.push(new Candidate(x, x.weight, false));
+                }
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                // Expand subtrees until a term is on top, so that the stack is empty exactly when no terms remain.
+                while (!stack.isEmpty() && stack.peek().whole) {
+                    Node node = stack.pop().node;
+                    pushSubtree(stack, node.right);
+                    pushSubtree(stack, node.mid);
+                    if (node.term != null) {
+                        stack.push(new Candidate(node, node.weight, false));
+                    }
+                    pushSubtree(stack, node.left);
+                }
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public CharSequence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return stack.pop().node.term;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of terms that match the given prefix.
+     *
+     * @param prefix search query.
+     * @return the number of terms that match the given prefix.
+     */
+    public int countMatches(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        if (prefix.isEmpty()) {
+            return size(overallRoot);
+        }
+        Node x = get(overallRoot, prefix);
+        if (x == null) {
+            return 0;
+        }
+        return (x.term != null ? 1 : 0) + size(x.mid);
+    }
+
+    /**
+     * Returns up to the given number of terms that match the given prefix, lightest first. Terms of equal weight are
+     * returned in an unspecified order.
+     *
+     * @param prefix     search query.
+     * @param maxMatches the maximum number of terms to return.
+     * @return up to the given number of the lightest terms that match the given prefix, lightest first.
+     */
+    public List<CharSequence> topMatches(CharSequence prefix, int maxMatches) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        List<CharSequence> matches = new ArrayList<>(Math.max(0, Math.min(maxMatches, 16)));
+        if (maxMatches <= 0) {
+            return matches;
+        }
+        PriorityQueue<Candidate> perimeter = new PriorityQueue<>(ORDER);
+        if (prefix.isEmpty()) {
+            offerSubtree(perimeter, overallRoot);
+        } else {
+            Node x = get(overallRoot, prefix);
+            if (x == null) {
+                return matches;
+            }
+            if (x.term != null) {
+                perimeter.add(new Candidate(x, x.weight, false));
+            }
+            offerSubtree(perimeter, x.mid);
+        }
+        drain(perimeter, matches, maxMatches);
+        return matches;
+    }
+
+    /**
+     * Returns up to the given number of terms that begin with a string within the given number of edits (insertions,
+     * deletions, or substitutions) of the given prefix, ordered by fewest edits and then lightest first. Terms that
+     * match exactly come first, followed by terms one edit away, and so on.
+     *
+     * <p>The search walks the tree while maintaining one row of the Levenshtein distance table per character of the
+     * path, which simulates a Levenshtein automaton for the prefix. A branch is abandoned as soon as every entry of
+     * its row exceeds the edit limit, and once a path is within the limit its whole subtree matches without further
+     * comparisons, so the walk only descends further to find matches with fewer edits.
+     *
+     * @param prefix     search query.
+     * @param maxEdits   the maximum number of edits.
+     * @param maxMatches the maximum number of terms to return.
+     * @return up to the given number of terms that approximately match the given prefix, best first.
+     */
+    public List<CharSequence> fuzzyMatches(CharSequence prefix, int maxEdits, int maxMatches) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("calls with null");
+        }
+        // The subtrees and terms that match with each number of edits.
+        List<List<Candidate>> byEdits = new ArrayList<>(maxEdits + 1);
+        for (int edits = 0; edits <= maxEdits; edits += 1) {
+            byEdits.add(new ArrayList<>());
+        }
+        int[] row = new int[prefix.length() + 1];
+        for (int j = 0; j < row.length; j += 1) {
+            row[j] = j;
+        }
+        int edits = prefix.length();
+        if (edits <= maxEdits && overallRoot != null) {
+            // Deleting every character of the prefix matches every term.
+            byEdits.get(edits).add(new Candidate(overallRoot, overallRoot.lightest, true));
+        }
+        walk(overallRoot, prefix, row, Math.min(edits, maxEdits + 1), byEdits);
+
+        Set<CharSequence> matches = new LinkedHashSet<>();
+        for (List<Candidate> candidates : byEdits) {
+            if (matches.size() >= maxMatches) {
+                break;
+            }
+            PriorityQueue<Candidate> perimeter = new PriorityQueue<>(ORDER);
+            perimeter.addAll(candidates);
+            drain(perimeter, matches, maxMatches);
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * Computes the Levenshtein distance row for the path ending at each node in the subtree rooted at the given node
+     * and records the nodes whose path is within the edit limit.
+     *
+     * @param node     the root of the subtree, or null.
+     * @param prefix   the search query.
+     * @param previous the distance row for the path leading to the subtree.
+     * @param matched  the number of edits of the closest match already recorded along the path, or one more than the
+     *                 maximum number of edits if none.
+     * @param byEdits  the matching subtrees and terms for each number of edits.
+     */
+    private static void walk(Node node, CharSequence prefix, int[] previous, int matched,
+                             List<List<Candidate>> byEdits) {
+        if (node == null) {
+            return;
+        }
+        walk(node.left, prefix, previous, matched, byEdits);
+        walk(node.right, prefix, previous, matched, byEdits);
+
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j += 1) {
+            int substitution = previous[j - 1] + (prefix.charAt(j - 1) == node.data ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            min = Math.min(min, row[j]);
+        }
+        int edits = row[row.length - 1];
+        if (edits < matched) {
+            List<Candidate> candidates = byEdits.get(edits);
+            if (node.term != null) {
+                candidates.add(new Candidate(node, node.weight, false));
+            }
+            if (node.mid != null) {
+                candidates.add(new Candidate(node.mid, node.mid.lightest, true));
+            }
+            matched = edits;
+        }
+        // Distances never drop below the smallest entry of the row, so only continue if a closer match is possible.
+        if (min < matched) {
+            walk(node.mid, prefix, row, matched, byEdits);
+        }
+    }
+
+    /**
+     * Removes candidates from the perimeter lightest first, expanding subtrees, until the given number of matches is
+     * reached or the perimeter is empty.
+     *
+     * @param perimeter  the candidates ordered by weight.
+     * @param matches    the collection of matches to add to.
+     * @param maxMatches the maximum number of matches.
+     */
+    private static void drain(PriorityQueue<Candidate> perimeter, Collection<CharSequence> matches, int maxMatches) {
+        while (!perimeter.isEmpty() && matches.size() < maxMatches) {
+            Candidate candidate = perimeter.remove();
+            Node node = candidate.node;
+            if (!candidate.whole) {
+                matches.add(node.term);
+            } else {
+                // Every term in the subtree is a match, so expand the node into its own term and its three children.
+                if (node.term != null) {
+                    perimeter.add(new Candidate(node, node.weight, false));
+                }
+                offerSubtree(perimeter, node.left);
+                offerSubtree(perimeter, node.mid);
+                offerSubtree(perimeter, node.right);
+            }
+        }
+    }
+
+    /**
+     * Adds the entire subtree rooted at the given node to the perimeter if it is not empty.
+     *
+     * @param perimeter the candidates ordered by weight.
+     * @param node      the root of the subtree, or null.
+     */
+    private static void offerSubtree(PriorityQueue<Candidate> perimeter, Node node) {
+        if (node != null) {
+            perimeter.add(new Candidate(node, node.lightest, true));
+        }
+    }
+
+    /**
+     * Pushes the entire subtree rooted at the given node onto the stack if it is not empty.
+     *
+     * @param stack the terms and subtrees left to iterate over, next first.
+     * @param node  the root of the subtree, or null.
+     */
+    private static void pushSubtree(Deque<Candidate> stack, Node node) {
+        if (node != null) {
+            stack.push(new Candidate(node, node.lightest, true));
+        }
+    }
+
+    private Node put(Node node, CharSequence key, int i, double weight) {
+        char c = key.charAt(i);
+        if (node == null) {
+            node = new Node(c);
+        }
+        if (c < node.data) {
+            node.left = put(node.left, key, i, weight);
+        } else if (c > node.data) {
+            node.right = put(node.right, key, i, weight);
+        } else if (i < key.length() - 1) {
+            node.mid = put(node.mid, key, i + 1, weight);
+        } else {
+            if (node.term == null) {
+                node.term = key.toString();
+            }
+            node.weight = weight;
+        }
+        node.lightest = Math.min(node.lightest, weight);
+        node.size = (node.term != null ? 1 : 0) + size(node.left) + size(node.mid) + size(node.right);
+        return node;
+    }
+
+    /**
+     * Returns the node for the last character of the given non-empty key, or null if there is no such node.
+     *
+     * @param node the root of the subtree to search.
+     * @param key  the non-empty key.
+     * @return the node for the last character of the given key, or null if there is no such node.
+     */
+    private static Node get(Node node, CharSequence key) {
+        int i = 0;
+        while (node != null) {
+            char c = key.charAt(i);
+            if (c < node.data) {
+                node = node.left;
+            } else if (c > node.data) {
+                node = node.right;
+            } else if (i < key.length() - 1) {
+                node = node.mid;
+                i += 1;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static void collect(Node node, List<CharSequence> matches) {
+        if (node == null) {
+            return;
+        }
+        collect(node.left, matches);
+        if (node.term != null) {
+            matches.add(node.term);
+        }
+        collect(node.mid, matches);
+        collect(node.right, matches);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node {
+        private final char data;
+        /**
+         * The term ending at this node, or null if no term ends here.
+         */
+        private String term;
+        private double weight;
+        /**
+         * The lightest weight of any term in the subtree rooted at this node, including the left and right subtrees.
+         */
+        private double lightest;
+        /**
+         * The number of terms in the subtree rooted at this node, including the left and right subtrees.
+         */
+        private int size;
+        private Node left;
+        private Node mid;
+        private Node right;
+
+        public Node(char data) {
+            this.data = data;
+            this.lightest = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Either the term at a node or every term in the subtree rooted at the node, keyed by the lightest weight.
+     */
+    private static class Candidate {
+        private final Node node;
+        private final double weight;
+        /**
+         * True for the entire subtree, or false for the term at the node only.
+         */
+        private final boolean whole;
+
+        Candidate(Node node, double weight, boolean whole) {
+            this.node = node;
+            this.weight = weight;
+            this.whole = whole;
+        }
+    }
+}
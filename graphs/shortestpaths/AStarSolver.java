@@ -17,6 +17,7 @@ public class AStarSolver<V> {
     private final Map<V, Edge<V>> edgeTo;
     private final Map<V, Double> distTo;
     private final V goal;
+    private int settled;
 
     /**
      * Constructs a new instance by executing A* search on the graph from the start to the goal.
@@ -35,6 +36,7 @@ public class AStarSolver<V> {
         distTo.put(start, 0.0);
         while (!perimeter.isEmpty()) {
             V from = perimeter.removeMin();
+            settled += 1;
             for (Edge<V> e : graph.neighbors(from)) {
                 V to = e.to;
                 double oldDist = distTo.getOrDefault(to, Double.POSITIVE_INFINITY);
@@ -65,4 +67,13 @@ public class AStarSolver<V> {
         Collections.reverse(path);
         return path;
     }
+
+    /**
+     * Returns the number of vertices removed from the perimeter during the search.
+     *
+     * @return the number of vertices removed from the perimeter during the search.
+     */
+    public int settled() {
+        return settled;
+    }
 }
@@ -57,4 +57,14 @@ public class DijkstraSolver<V> implements ShortestPathSolver<V> {
         Collections.reverse(path);
         return path;
     }
+
+    /**
+     * Returns the total weight of the shortest path from the start vertex to the goal.
+     *
+     * @param goal the goal vertex.
+     * @return the total weight of the shortest path, or positive infinity if the goal is unreachable.
+     */
+    public double distTo(V goal) {
+        return distTo.getOrDefault(goal, Double.POSITIVE_INFINITY);
+    }
 }
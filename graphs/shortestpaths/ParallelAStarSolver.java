@@ -0,0 +1,344 @@
+package graphs.shortestpaths;
+
+import graphs.AStarGraph;
+import graphs.Edge;
+import minpq.DoubleMapMinPQ;
+import minpq.MinPQ;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* (HDA*) implementation for single-pair shortest paths in an {@link AStarGraph}. Each vertex is
+ * owned by exactly one worker thread chosen by the hash of the vertex. Only the owner keeps the distance, edge, and
+ * perimeter entries for its vertices, so workers never share mutable search state: relaxing an edge whose endpoint
+ * belongs to another worker sends that worker a message instead.
+ *
+ * <p>The search terminates once no worker has a perimeter vertex or an undelivered message left. A single counter
+ * tracks this outstanding work: it is incremented before every message is sent or vertex is queued and decremented
+ * only after that message or vertex has been fully handled, so it can only reach zero once the search is over.
+ * Vertices whose priority cannot improve on the best path found so far are pruned, which keeps the result optimal
+ * for any admissible heuristic.
+ *
+ * <p>Workers run on threads shared by every search. A worker with nothing to do parks until another worker sends it
+ * a message or the search ends, so idle workers do not consume processor time.
+ *
+ * @param <V> the type of vertices.
+ * @see AStarGraph
+ * @see AStarSolver
+ */
+public class ParallelAStarSolver<V> {
+    /**
+     * Threads running the workers of every search. The pool grows as needed rather than having a fixed size, because
+     * the workers of one search wait on each other: a search whose workers could not all run at once would never end.
+     */
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hda-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Worker> workers;
+    private final V goal;
+    private final AtomicLong outstanding;
+    private final AtomicLong bestBits;
+    private final AtomicReference<Throwable> failure;
+
+    /**
+     * Constructs a new instance by executing HDA* search on the graph from the start to the goal using one worker per
+     * available processor.
+     *
+     * @param graph the input graph.
+     * @param start the start vertex.
+     * @param goal  the goal vertex.
+     */
+    public ParallelAStarSolver(AStarGraph<V> graph, V start, V goal) {
+        this(graph, start, goal, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance by executing HDA* search on the graph from the start to the goal.
+     *
+     * @param graph       the input graph.
+     * @param start       the start vertex.
+     * @param goal        the goal vertex.
+     * @param parallelism the number of worker threads.
+     * @throws IllegalArgumentException if parallelism is not positive.
+     */
+    public ParallelAStarSolver(AStarGraph<V> graph, V start, V goal, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.goal = goal;
+        outstanding = new AtomicLong();
+        bestBits = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        failure = new AtomicReference<>();
+        workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i += 1) {
+            workers.add(new Worker(graph));
+        }
+
+        send(new Message<>(start, null, 0.0));
+
+        CountDownLatch finished = new CountDownLatch(parallelism);
+        for (Worker worker : workers) {
+            POOL.execute(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        boolean interrupted = false;
+        while (finished.getCount() > 0) {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Returns the single-pair shortest path from the stored start to the stored goal.
+     *
+     * @return a list of vertices representing the shortest path.
+     */
+    public List<V> solution() {
+        List<V> path = new ArrayList<>();
+        V curr = goal;
+        path.add(curr);
+        Edge<V> e = ownerOf(curr).edgeTo.get(curr);
+        while (e != null) {
+            curr = e.from;
+            path.add(curr);
+            e = ownerOf(curr).edgeTo.get(curr);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Returns the total number of vertices removed from the perimeters of all workers.
+     *
+     * @return the total number of vertices removed from the perimeters of all workers.
+     */
+    public int settled() {
+        int result = 0;
+        for (Worker worker : workers) {
+            result += worker.settled;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the worker that owns the given vertex.
+     *
+     * @param vertex the vertex of interest.
+     * @return the worker that owns the given vertex.
+     */
+    private Worker ownerOf(V vertex) {
+        int h = vertex.hashCode();
+        h ^= h >>> 16;
+        return workers.get(Math.floorMod(h, workers.size()));
+    }
+
+    /**
+     * Counts one more piece of outstanding work and delivers the message to the worker that owns its vertex, waking
+     * that worker if it is parked.
+     *
+     * @param message the message.
+     */
+    private void send(Message<V> message) {
+        outstanding.incrementAndGet();
+        Worker owner = ownerOf(message.vertex);
+        owner.inbox.add(message);
+        owner.wake();
+    }
+
+    /**
+     * Marks one piece of outstanding work as fully handled, waking every worker if it was the last so that they can
+     * see that the search is over.
+     */
+    private void finish() {
+        if (outstanding.decrementAndGet() == 0) {
+            workers.forEach(Worker::wake);
+        }
+    }
+
+    /**
+     * Returns the cost of the best path to the goal found so far.
+     *
+     * @return the cost of the best path to the goal found so far.
+     */
+    private double best() {
+        return Double.longBitsToDouble(bestBits.get());
+    }
+
+    /**
+     * Lowers the cost of the best path to the goal found so far if the given cost is smaller. The bit patterns of
+     * non-negative doubles order the same way as their values, so a compare-and-set on the bits suffices.
+     *
+     * @param cost the cost of a newly-found path to the goal.
+     */
+    private void offerBest(double cost) {
+        long bits = Double.doubleToLongBits(cost);
+        long current = bestBits.get();
+        while (bits < current && !bestBits.compareAndSet(current, bits)) {
+            current = bestBits.get();
+        }
+    }
+
+    /**
+     * Proposed path to a vertex sent from the worker that relaxed the edge to the worker that owns its destination.
+     *
+     * @param <V> the type of vertices.
+     */
+    private static class Message<V> {
+        private final V vertex;
+        private final Edge<V> edge;
+        private final double dist;
+
+        /**
+         * Constructs a message proposing the given distance to the vertex.
+         *
+         * @param vertex the destination vertex.
+         * @param edge   the edge used to reach the vertex, or null for the start vertex.
+         * @param dist   the distance to the vertex through the edge.
+         */
+        Message(V vertex, Edge<V> edge, double dist) {
+            this.vertex = vertex;
+            this.edge = edge;
+            this.dist = dist;
+        }
+    }
+
+    /**
+     * Search thread owning the distances, edges, and perimeter entries of every vertex hashed to it.
+     */
+    private class Worker implements Runnable {
+        private final AStarGraph<V> graph;
+        private final Queue<Message<V>> inbox;
+        private final Map<V, Edge<V>> edgeTo;
+        private final Map<V, Double> distTo;
+        private final MinPQ<V> perimeter;
+        private int settled;
+        /**
+         * The thread running this worker, or null before it starts.
+         */
+        private volatile Thread thread;
+        /**
+         * True while this worker may be parked. Senders set a message before reading this flag and the worker sets
+         * this flag before checking for messages, so either the sender sees it and unparks the worker or the worker
+         * sees the message.
+         */
+        private volatile boolean waiting;
+
+        Worker(AStarGraph<V> graph) {
+            this.graph = graph;
+            inbox = new ConcurrentLinkedQueue<>();
+            edgeTo = new HashMap<>();
+            distTo = new HashMap<>();
+            perimeter = new DoubleMapMinPQ<>();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                while (outstanding.get() > 0 && failure.get() == null) {
+                    boolean worked = receive();
+                    if (!perimeter.isEmpty()) {
+                        expand();
+                        worked = true;
+                    }
+                    if (!worked) {
+                        waiting = true;
+                        if (inbox.isEmpty() && outstanding.get() > 0 && failure.get() == null) {
+                            LockSupport.park(this);
+                        }
+                        waiting = false;
+                    }
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                workers.forEach(Worker::wake);
+            } finally {
+                thread = null;
+            }
+        }
+
+        /**
+         * Unparks this worker if it may be parked.
+         */
+        void wake() {
+            Thread t = thread;
+            if (waiting && t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        /**
+         * Drains the inbox, queueing every vertex whose proposed distance improves on the known distance.
+         *
+         * @return true if and only if at least one message was received.
+         */
+        private boolean receive() {
+            boolean received = false;
+            Message<V> m;
+            while ((m = inbox.poll()) != null) {
+                received = true;
+                V to = m.vertex;
+                double oldDist = distTo.getOrDefault(to, Double.POSITIVE_INFINITY);
+                if (m.dist < oldDist) {
+                    edgeTo.put(to, m.edge);
+                    distTo.put(to, m.dist);
+                    if (to.equals(goal)) {
+                        offerBest(m.dist);
+                    } else {
+                        double priority = m.dist + graph.estimatedDistance(to, goal);
+                        if (priority < best()) {
+                            if (!perimeter.contains(to)) {
+                                outstanding.incrementAndGet();
+                            }
+                            perimeter.addOrChangePriority(to, priority);
+                        }
+                    }
+                }
+                finish();
+            }
+            return received;
+        }
+
+        /**
+         * Removes the minimum-priority vertex from the perimeter and sends each neighbor to its owner.
+         */
+        private void expand() {
+            double priority = perimeter.getPriority(perimeter.peekMin());
+            V from = perimeter.removeMin();
+            settled += 1;
+            if (priority < best()) {
+                double dist = distTo.get(from);
+                for (Edge<V> e : graph.neighbors(from)) {
+                    send(new Message<>(e.to, e, dist + e.weight));
+                }
+            }
+            finish();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link MapImageCache} class, fetching images from a local {@link StubUpstream} and deciding expiry
+ * with a clock that only moves when a test advances it.
+ *
+ * @see MapImageCache
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MapImageCacheTests {
+    private static final Duration TTL = Duration.ofHours(1);
+    private StubUpstream stub;
+    private MapImageCache.Upstream upstream;
+    /**
+     * The size of every image served by the stub.
+     */
+    private long imageBytes;
+
+    @BeforeAll
+    void setup() throws IOException {
+        stub = new StubUpstream(0, 0);
+        upstream = new HttpUpstream(stub.url(), null, Duration.ofSeconds(5), Duration.ofSeconds(5), 16);
+        imageBytes = upstream.fetch("size").join().length;
+    }
+
+    @AfterAll
+    void teardown() {
+        stub.stop();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedFromMemory(@TempDir Path directory) throws IOException {
+        // Hold two images in memory and none on disk, so that every miss goes upstream.
+        MapImageCache cache = new MapImageCache(upstream, directory, 2 * imageBytes, 0, TTL, new FakeClock());
+        assertFetches(1, cache, "a");
+        assertFetches(1, cache, "b");
+        assertFetches(0, cache, "a");
+        // The cache is full, so adding c evicts b, which was used less recently than a.
+        assertFetches(1, cache, "c");
+        assertFetches(0, cache, "a");
+        assertFetches(0, cache, "c");
+        assertFetches(1, cache, "b");
+    }
+
+    @Test
+    void expiresFromDiskAfterTimeToLive(@TempDir Path directory) throws IOException {
+        // Hold no images in memory, so that every hit is read from disk.
+        FakeClock clock = new FakeClock();
+        MapImageCache cache = new MapImageCache(upstream, directory, 0, 10 * imageBytes, TTL, clock);
+        assertFetches(1, cache, "a");
+        clock.advance(TTL.minusSeconds(1));
+        assertFetches(0, cache, "a");
+        clock.advance(Duration.ofSeconds(1));
+        assertFetches(1, cache, "a");
+        assertEquals(1, images(directory));
+    }
+
+    @Test
+    void rebuildsDiskIndexOnRestart(@TempDir Path directory) throws IOException {
+        FakeClock clock = new FakeClock();
+        MapImageCache cache = new MapImageCache(upstream, directory, 0, 10 * imageBytes, TTL, clock);
+        assertFetches(1, cache, "a");
+        clock.advance(Duration.ofMinutes(1));
+        assertFetches(1, cache, "b");
+        clock.advance(Duration.ofMinutes(1));
+        assertFetches(1, cache, "c");
+        Path partial = directory.resolve(MapImageCache.key("d") + "123.tmp");
+        Files.write(partial, new byte[]{1, 2, 3});
+
+        // Restart with room for two images, so that the oldest image is evicted and the others are still cached.
+        cache = new MapImageCache(upstream, directory, 0, 2 * imageBytes, TTL, clock);
+        assertFalse(Files.exists(partial));
+        assertEquals(2, images(directory));
+        assertFetches(0, cache, "b");
+        assertFetches(0, cache, "c");
+
+        // Restart once b has outlived the time-to-live but c has not.
+        clock.advance(TTL.minusSeconds(30));
+        cache = new MapImageCache(upstream, directory, 0, 10 * imageBytes, TTL, clock);
+        assertFetches(0, cache, "c");
+        assertFetches(1, cache, "b");
+        assertFetches(1, cache, "a");
+    }
+
+    /**
+     * Asserts that getting the image at the given path fetches the given number of images from upstream.
+     *
+     * @param expected the expected number of upstream fetches.
+     * @param cache    the cache.
+     * @param path     the request path.
+     */
+    private void assertFetches(long expected, MapImageCache cache, String path) {
+        long before = stub.requests();
+        assertEquals(imageBytes, cache.get(path).join().length);
+        assertEquals(expected, stub.requests() - before);
+    }
+
+    /**
+     * Returns the number of images stored in the given directory.
+     *
+     * @param directory the disk tier directory.
+     * @return the number of images stored in the given directory.
+     * @throws IOException if the directory cannot be read.
+     */
+    private static long images(Path directory) throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.count();
+        }
+    }
+
+    /**
+     * Clock that starts at the current time and only moves when advanced.
+     */
+    private static class FakeClock extends Clock {
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Point;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link NearbyIndex} class, comparing its answers with a brute-force sort of every location by distance.
+ *
+ * @see NearbyIndex
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class NearbyIndexTests {
+    private static final SpatialContext CONTEXT = SpatialContext.GEO;
+    /**
+     * Tolerance in meters between the distances reported by the index and the great-circle distances.
+     */
+    private static final double TOLERANCE = 1e-3;
+    private final Map<String, List<Point>> locations = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<Point> points = new ArrayList<>();
+    private NearbyIndex index;
+
+    @BeforeAll
+    void setup() {
+        Random random = new Random(373);
+        for (int i = 0; i < 2000; i += 1) {
+            // Some names have several locations, like a chain of stores.
+            String name = "place " + random.nextInt(1500);
+            Point location = randomPoint(random);
+            locations.computeIfAbsent(name, k -> new ArrayList<>()).add(location);
+            names.add(name);
+            points.add(location);
+        }
+        index = new NearbyIndex(locations);
+    }
+
+    @Test
+    void matchesBruteForceOrder() {
+        Random random = new Random(373);
+        for (int trial = 0; trial < 200; trial += 1) {
+            Point target = randomPoint(random);
+            int k = 1 + random.nextInt(20);
+            assertNearest(target, k);
+        }
+    }
+
+    @Test
+    void limitsToRequestedCount() {
+        Point target = CONTEXT.getShapeFactory().pointLatLon(47.65, -122.3);
+        assertTrue(index.nearest(target, 0).isEmpty());
+        assertEquals(1, index.nearest(target, 1).size());
+        assertEquals(points.size(), index.nearest(target, points.size()).size());
+        assertEquals(points.size(), index.nearest(target, points.size() + 10).size());
+        assertNearest(target, points.size());
+    }
+
+    @Test
+    void emptyIndexReturnsNothing() {
+        NearbyIndex empty = new NearbyIndex(Map.of());
+        assertTrue(empty.nearest(CONTEXT.getShapeFactory().pointLatLon(0, 0), 5).isEmpty());
+    }
+
+    /**
+     * Asserts that the index returns the given number of locations closest to the target, closest first, with their
+     * distances from the target.
+     *
+     * @param target the target location.
+     * @param k      the maximum number of locations to return.
+     */
+    private void assertNearest(Point target, int k) {
+        Integer[] order = new Integer[points.size()];
+        double[] distances = new double[points.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+            distances[i] = CONTEXT.calcDistance(points.get(i), target) * DistanceUtils.DEG_TO_KM * 1000;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+
+        List<NearbyIndex.Neighbor> actual = index.nearest(target, k);
+        assertEquals(Math.min(k, order.length), actual.size());
+        for (int j = 0; j < actual.size(); j += 1) {
+            NearbyIndex.Neighbor neighbor = actual.get(j);
+            int expected = order[j];
+            assertEquals(distances[expected], neighbor.distance, TOLERANCE);
+            if (j > 0) {
+                assertTrue(actual.get(j - 1).distance <= neighbor.distance);
+            }
+            // Locations at the same distance may come in either order, so only compare unambiguous ranks.
+            if (j + 1 == order.length || distances[order[j + 1]] - distances[expected] > TOLERANCE) {
+                assertEquals(names.get(expected), neighbor.name);
+                assertEquals(points.get(expected).getLat(), neighbor.lat);
+                assertEquals(points.get(expected).getLon(), neighbor.lon);
+            }
+        }
+    }
+
+    /**
+     * Returns a random point around Seattle.
+     *
+     * @param random the random number generator.
+     * @return a random point around Seattle.
+     */
+    private static Point randomPoint(Random random) {
+        return CONTEXT.getShapeFactory().pointLatLon(47.5 + 0.3 * random.nextDouble(),
+                -122.45 + 0.3 * random.nextDouble());
+    }
+}
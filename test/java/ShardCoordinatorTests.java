@@ -0,0 +1,208 @@
+import graphs.Edge;
+import graphs.shortestpaths.DijkstraSolver;
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link ShardCoordinator} class, routing across two shards of a small generated map served in this
+ * process and comparing the routes with shortest paths in the graph of the whole map.
+ *
+ * @see ShardCoordinator
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ShardCoordinatorTests {
+    private static final SpatialContext CONTEXT = SpatialContext.GEO;
+    /**
+     * Number of rows and columns of street intersections in the generated map.
+     */
+    private static final int SIDE = 12;
+    /**
+     * Longitude dividing the western shard from the eastern shard.
+     */
+    private static final double SPLIT = -122.3303;
+    private final ShapeFactory factory = CONTEXT.getShapeFactory();
+    /**
+     * Intersections on at least one street, which are the vertices of the graph.
+     */
+    private final List<Point> intersections = new ArrayList<>();
+    private final List<Javalin> shards = new ArrayList<>();
+    private Path directory;
+    private MapGraph full;
+    private ShardCoordinator coordinator;
+
+    @BeforeAll
+    void setup() throws Exception {
+        directory = Files.createTempDirectory("shards");
+        writeMap(new Random(373));
+        // MapGraph reads its files as resources, so load them from the temporary directory.
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        List<String> bases = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, original)) {
+            thread.setContextClassLoader(loader);
+            full = new MapGraph("map.osm.gz", "places.tsv", CONTEXT);
+            for (Rectangle region : List.of(factory.rect(-180, SPLIT, -90, 90), factory.rect(SPLIT, 180, -90, 90))) {
+                MapGraph graph = new MapGraph("map.osm.gz", "places.tsv", CONTEXT, region);
+                Versioned<MapServer.MapData> maps = new Versioned<>();
+                maps.swap(new MapServer.MapData(graph, null, new RegionShard(graph)));
+                Javalin app = Javalin.create().start(0);
+                app.get("/ready", ctx -> ctx.result("ready"));
+                MapServer.shardEndpoints(app, maps, factory);
+                shards.add(app);
+                bases.add("http://localhost:" + app.port());
+            }
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+        intersections.removeIf(point -> full.neighbors(point).isEmpty());
+        coordinator = new ShardCoordinator(bases, CONTEXT);
+    }
+
+    @AfterAll
+    void teardown() throws IOException {
+        shards.forEach(Javalin::stop);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void matchesShortestPathsInFullGraph() throws Exception {
+        Random random = new Random(373);
+        int crossing = 0;
+        for (int trial = 0; trial < 100; trial += 1) {
+            Point start = intersections.get(random.nextInt(intersections.size()));
+            Point goal = intersections.get(random.nextInt(intersections.size()));
+            double expected = new DijkstraSolver<>(full, start).distTo(goal);
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertThrows(IllegalArgumentException.class, () -> coordinator.route(start, goal));
+                continue;
+            }
+            if ((start.getLon() < SPLIT) != (goal.getLon() < SPLIT)) {
+                crossing += 1;
+            }
+            ShardCoordinator.Route route = coordinator.route(start, goal);
+            assertEquals(expected, route.distance(), 1e-9);
+            List<Point> path = route.path();
+            assertEquals(start, path.get(0));
+            assertEquals(goal, path.get(path.size() - 1));
+            assertEquals(expected, weight(path), 1e-9);
+        }
+        assertTrue(crossing > 0);
+    }
+
+    /**
+     * Returns the total weight of the given path in the graph of the whole map, failing if consecutive vertices are
+     * not connected.
+     *
+     * @param path the path.
+     * @return the total weight of the path.
+     */
+    private double weight(List<Point> path) {
+        double total = 0;
+        for (int i = 1; i < path.size(); i += 1) {
+            Point to = path.get(i);
+            Edge<Point> edge = full.neighbors(path.get(i - 1)).stream()
+                    .filter(e -> e.to.equals(to))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("No edge along path"));
+            total += edge.weight;
+        }
+        return total;
+    }
+
+    /**
+     * Writes a gzipped OSM file of a jittered grid of intersections joined by streets along each row and column, with
+     * a few of the streets being footpaths that are not part of the graph, and a places TSV naming a few of the
+     * intersections.
+     *
+     * @param random the random number generator.
+     * @throws IOException if a file cannot be written.
+     */
+    private void writeMap(Random random) throws IOException {
+        try (OutputStream file = Files.newOutputStream(directory.resolve("map.osm.gz"));
+             PrintWriter osm = new PrintWriter(new GZIPOutputStream(file), false, StandardCharsets.UTF_8);
+             PrintWriter places = new PrintWriter(Files.newBufferedWriter(directory.resolve("places.tsv")))) {
+            osm.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            osm.println("<osm version=\"0.6\">");
+            for (int row = 0; row < SIDE; row += 1) {
+                for (int column = 0; column < SIDE; column += 1) {
+                    double lon = -122.36 + 0.005 * column + 0.002 * random.nextDouble();
+                    double lat = 47.60 + 0.004 * row + 0.002 * random.nextDouble();
+                    intersections.add(factory.pointXY(lon, lat));
+                    osm.printf(Locale.ROOT, "<node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\">%n", id(row, column), lat, lon);
+                    if (random.nextInt(10) == 0) {
+                        String name = "Place " + row + "-" + column;
+                        osm.println("<tag k=\"name\" v=\"" + name + "\"/>");
+                        places.println(name + "\t" + (row * SIDE + column));
+                    }
+                    osm.println("</node>");
+                }
+            }
+            for (int i = 0; i < SIDE; i += 1) {
+                writeWay(osm, random, 2 * i + 1, i, 0, 0, 1);
+                writeWay(osm, random, 2 * i + 2, 0, i, 1, 0);
+            }
+            osm.println("</osm>");
+        }
+        // The generated coordinates were rounded to seven places in the file.
+        for (int i = 0; i < intersections.size(); i += 1) {
+            Point point = intersections.get(i);
+            intersections.set(i, factory.pointXY(round(point.getLon()), round(point.getLat())));
+        }
+    }
+
+    /**
+     * Writes a street through every intersection of a row or column, starting at the given intersection.
+     *
+     * @param osm        the OSM output.
+     * @param random     the random number generator.
+     * @param id         the id of the street.
+     * @param row        the row of the first intersection.
+     * @param column     the column of the first intersection.
+     * @param rowStep    the change in row from one intersection to the next.
+     * @param columnStep the change in column from one intersection to the next.
+     */
+    private static void writeWay(PrintWriter osm, Random random, int id, int row, int column, int rowStep,
+                                 int columnStep) {
+        osm.println("<way id=\"" + id + "\">");
+        for (int r = row, c = column; r < SIDE && c < SIDE; r += rowStep, c += columnStep) {
+            osm.println("<nd ref=\"" + id(r, c) + "\"/>");
+        }
+        String highway = random.nextInt(6) == 0 ? "footway" : "residential";
+        osm.println("<tag k=\"highway\" v=\"" + highway + "\"/>");
+        osm.println("</way>");
+    }
+
+    private static long id(int row, int column) {
+        return row * SIDE + column + 1;
+    }
+
+    private static double round(double degrees) {
+        return Double.parseDouble(String.format(Locale.ROOT, "%.7f", degrees));
+    }
+}
@@ -77,6 +77,34 @@ public abstract class AutocompleteTests {
         }
     }
 
+    @Test
+    void compareLimitedMatches() {
+        Random random = new Random(373);
+        double samplingProportion = 0.001;
+        for (String city : cities) {
+            if (random.nextDouble() <= samplingProportion) {
+                String prefix = city.substring(0, Math.min(city.length(), random.nextInt(3) + 1));
+                List<CharSequence> all = testing.allMatches(prefix);
+                assertEquals(all, testing.stream(prefix).toList());
+                for (int limit : new int[]{0, 1, 10}) {
+                    assertEquals(all.subList(0, Math.min(limit, all.size())), testing.matches(prefix, limit));
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptyPrefixMatchesEveryTerm() {
+        List<CharSequence> all = testing.allMatches("");
+        Set<String> terms = new HashSet<>();
+        for (CharSequence term : all) {
+            terms.add(term.toString());
+        }
+        assertEquals(new HashSet<>(cities), terms);
+        assertEquals(all, testing.stream("").toList());
+        assertEquals(all.subList(0, 10), testing.matches("", 10));
+    }
+
     /**
      * Asserts that the reference and testing implementations' {@code allMatches} methods produce
      * the same results ignoring order.
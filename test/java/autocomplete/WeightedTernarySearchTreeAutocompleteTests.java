@@ -0,0 +1,113 @@
+package autocomplete;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link WeightedTernarySearchTreeAutocomplete} class.
+ *
+ * @see WeightedTernarySearchTreeAutocomplete
+ */
+public class WeightedTernarySearchTreeAutocompleteTests extends AutocompleteTests {
+    @Override
+    public Autocomplete createAutocomplete() {
+        return new WeightedTernarySearchTreeAutocomplete();
+    }
+
+    @Test
+    void compareTopMatchesByWeight() throws IOException {
+        Map<String, Double> weights = new HashMap<>();
+        Random random = new Random(373);
+        Scanner input = new Scanner(new FileInputStream("data/cities.tsv"));
+        while (input.hasNextLine()) {
+            Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
+            // Draw weights from a small range so that many terms tie.
+            weights.put(line.next(), (double) random.nextInt(1000));
+        }
+        WeightedTernarySearchTreeAutocomplete autocomplete = new WeightedTernarySearchTreeAutocomplete();
+        for (Map.Entry<String, Double> entry : weights.entrySet()) {
+            autocomplete.add(entry.getKey(), entry.getValue());
+        }
+        for (String prefix : new String[]{"", "S", "Sea", "Seattle", "Zz", "A"}) {
+            List<CharSequence> matches = autocomplete.allMatches(prefix);
+            assertEquals(matches.size(), autocomplete.countMatches(prefix));
+            List<Double> expected = new ArrayList<>();
+            for (CharSequence match : matches) {
+                expected.add(weights.get(match.toString()));
+            }
+            Collections.sort(expected);
+            expected = expected.subList(0, Math.min(10, expected.size()));
+
+            List<CharSequence> top = autocomplete.topMatches(prefix, 10);
+            List<Double> actual = new ArrayList<>();
+            for (CharSequence match : top) {
+                assertTrue(Autocomplete.isPrefixOf(prefix, match));
+                actual.add(weights.get(match.toString()));
+            }
+            assertEquals(expected, actual);
+            assertEquals(top.size(), new HashSet<>(top).size());
+        }
+    }
+
+    @Test
+    void compareFuzzyMatchesToEditDistance() throws IOException {
+        List<String> cities = new ArrayList<>();
+        Scanner input = new Scanner(new FileInputStream("data/cities.tsv"));
+        while (input.hasNextLine()) {
+            cities.add(new Scanner(input.nextLine()).useDelimiter("\t").next());
+        }
+        WeightedTernarySearchTreeAutocomplete autocomplete = new WeightedTernarySearchTreeAutocomplete();
+        autocomplete.addAll(cities);
+        for (String prefix : new String[]{"Seatle", "Sna Franc", "Lso Ang", "Bostno", "Xq"}) {
+            for (int maxEdits = 1; maxEdits <= 2; maxEdits += 1) {
+                List<CharSequence> matches = autocomplete.fuzzyMatches(prefix, maxEdits, Integer.MAX_VALUE);
+                Map<String, Integer> expected = new HashMap<>();
+                for (String city : cities) {
+                    int edits = prefixEditDistance(prefix, city);
+                    if (edits <= maxEdits) {
+                        expected.put(city, edits);
+                    }
+                }
+                assertEquals(expected.size(), matches.size());
+                int previous = 0;
+                for (CharSequence match : matches) {
+                    // Every match is expected, and matches are ordered by the number of edits.
+                    int edits = expected.get(match.toString());
+                    assertTrue(edits >= previous);
+                    previous = edits;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest edit distance between the query and any prefix of the term.
+     *
+     * @param query the query.
+     * @param term  the term.
+     * @return the smallest edit distance between the query and any prefix of the term.
+     */
+    private static int prefixEditDistance(String query, String term) {
+        int[] previous = new int[query.length() + 1];
+        for (int j = 0; j < previous.length; j += 1) {
+            previous[j] = j;
+        }
+        int best = previous[query.length()];
+        for (int i = 1; i <= term.length(); i += 1) {
+            int[] row = new int[previous.length];
+            row[0] = i;
+            for (int j = 1; j < row.length; j += 1) {
+                int substitution = previous[j - 1] + (term.charAt(i - 1) == query.charAt(j - 1) ? 0 : 1);
+                row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            }
+            best = Math.min(best, row[query.length()]);
+            previous = row;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,106 @@
+package graphs.shortestpaths;
+
+import graphs.AStarGraph;
+import graphs.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link ParallelAStarSolver} class.
+ *
+ * @see ParallelAStarSolver
+ */
+public class ParallelAStarSolverTests {
+    /**
+     * Number of rows and columns of the grid graph.
+     */
+    private static final int SIDE = 40;
+
+    @Test
+    void matchesSequentialSolvers() {
+        GridGraph graph = new GridGraph(new Random(373));
+        Random random = new Random(373);
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            for (int trial = 0; trial < 25; trial += 1) {
+                int start = random.nextInt(SIDE * SIDE);
+                int goal = random.nextInt(SIDE * SIDE);
+                double expected = new DijkstraSolver<>(graph, start).distTo(goal);
+                assertEquals(expected, graph.weight(new AStarSolver<>(graph, start, goal).solution()), 1e-9);
+
+                List<Integer> path = new ParallelAStarSolver<>(graph, start, goal, parallelism).solution();
+                assertEquals(start, path.get(0));
+                assertEquals(goal, path.get(path.size() - 1));
+                assertEquals(expected, graph.weight(path), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveParallelism() {
+        GridGraph graph = new GridGraph(new Random(373));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelAStarSolver<>(graph, 0, 1, 0));
+    }
+
+    /**
+     * Grid of points connected to their horizontal and vertical neighbors by two-way edges, each weighted by the
+     * distance between its endpoints times a random factor of at least 1, so that the straight-line distance is an
+     * admissible heuristic that is rarely exact.
+     */
+    private static class GridGraph implements AStarGraph<Integer> {
+        private final List<List<Edge<Integer>>> neighbors;
+
+        GridGraph(Random random) {
+            neighbors = new ArrayList<>(SIDE * SIDE);
+            for (int v = 0; v < SIDE * SIDE; v += 1) {
+                neighbors.add(new ArrayList<>());
+            }
+            for (int v = 0; v < SIDE * SIDE; v += 1) {
+                if (v % SIDE < SIDE - 1) {
+                    connect(v, v + 1, 1 + 2 * random.nextDouble());
+                }
+                if (v + SIDE < SIDE * SIDE) {
+                    connect(v, v + SIDE, 1 + 2 * random.nextDouble());
+                }
+            }
+        }
+
+        private void connect(int v, int w, double weight) {
+            neighbors.get(v).add(new Edge<>(v, w, weight));
+            neighbors.get(w).add(new Edge<>(w, v, weight));
+        }
+
+        @Override
+        public List<Edge<Integer>> neighbors(Integer vertex) {
+            return neighbors.get(vertex);
+        }
+
+        @Override
+        public double estimatedDistance(Integer start, Integer end) {
+            return Math.hypot(start % SIDE - end % SIDE, start / SIDE - end / SIDE);
+        }
+
+        /**
+         * Returns the total weight of the given path, failing if consecutive vertices are not connected.
+         *
+         * @param path the path.
+         * @return the total weight of the path.
+         */
+        double weight(List<Integer> path) {
+            double total = 0;
+            for (int i = 1; i < path.size(); i += 1) {
+                int to = path.get(i);
+                Edge<Integer> edge = neighbors(path.get(i - 1)).stream()
+                        .filter(e -> e.to == to)
+                        .findFirst()
+                        .orElseThrow(() -> new AssertionError("No edge along path"));
+                total += edge.weight;
+            }
+            return total;
+        }
+    }
+}